@@ -3,26 +3,39 @@ package com.example;
 import com.example.commands.*;
 import com.example.common.command.Command;
 import com.example.common.command.CommandManager;
+import com.example.common.network.ApplicationStatus;
 import com.example.common.network.NetworkObject;
 import com.example.common.network.NetworkObjectBuilder;
+import com.example.common.network.PayloadCompressor;
 import com.example.common.network.ReceiveObject;
+import com.example.common.network.SendWindow;
 import com.example.common.network.UDPManager;
-import com.example.common.network.serializer.NetworkSerializer;
 import lombok.extern.log4j.Log4j2;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Log4j2
 public class Client {
     // ID для нашего единственного "пользователя" - консоли
     public static final long CONSOLE_USER_ID = 0L;
+    public static final int MAX_IN_FLIGHT = 512;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+    // Период таймеров надежной доставки; столько же максимум ждет select без датаграмм
+    private static final long TICK_MILLIS = 20;
+    // Команды, ответ на которые приходит страницами с курсором
+    private static final Set<String> PAGED_COMMANDS = Set.of("show", "show_mine");
 
     private final UDPManager udpManager;
     private final DatagramChannel channel;
@@ -38,13 +51,33 @@ public class Client {
     // Карта для отслеживания, какой пользователь отправил какой запрос
     // Ключ - ID запроса, значение - ID пользователя
     private final Map<Long, Long> pendingRequests = new ConcurrentHashMap<>();
+    // Запросы show, ждущие страницу: по курсору из ответа запрашивается следующая
+    private final Map<Long, NetworkObject> pagedRequests = new ConcurrentHashMap<>();
+    // Запросы, отправленные через submit: ключ - ID запроса, значение - ожидающий ответ future
+    private final Map<Long, CompletableFuture<NetworkObject>> inFlight = new ConcurrentHashMap<>();
+    private final Semaphore inFlightPermits = new Semaphore(MAX_IN_FLIGHT);
+    private final AtomicLong requestIds = new AtomicLong(System.nanoTime());
+    private final AtomicBoolean networkStarted = new AtomicBoolean(false);
+    private volatile Selector selector;
 
     public Client(String serverHost, int serverPort) throws IOException {
+        this(serverHost, serverPort, ClientConfig.fromSystemProperties());
+    }
+
+    public Client(String serverHost, int serverPort, ClientConfig config) throws IOException {
         // 1. Инициализация сети
         channel = DatagramChannel.open().bind(null);
         channel.configureBlocking(false);
         InetSocketAddress serverAddress = new InetSocketAddress(serverHost, serverPort);
-        udpManager = new UDPManager(channel, new NetworkSerializer(), new NetworkObjectBuilder(), serverAddress);
+        udpManager = new UDPManager(channel, new NetworkObjectBuilder(), serverAddress);
+        if (config.isCompression()) {
+            udpManager.enableCompression(new PayloadCompressor(config.getCompressionThreshold(), config.getCompressionLevel()));
+        }
+        if (config.isReliableDelivery()) {
+            // Запросы идут одному серверу, поэтому при заполненном окне отправка ждет ACK, а не бросает старые запросы
+            udpManager.enableReliableDelivery(new SendWindow(config.getSendWindow(),
+                    config.getRetransmitTimeoutMillis(), config.getMaxRetransmits(), TimeUnit.MILLISECONDS, true));
+        }
 
         // 2. Инициализация менеджеров
         CommandManager clientCommandManager = addCommands();
@@ -58,6 +91,7 @@ public class Client {
 
         manager.addCommand(new Add());
         manager.addCommand(new Show());
+        manager.addCommand(new ShowMine());
         manager.addCommand(new Authenticate());
         return manager;
     }
@@ -66,14 +100,73 @@ public class Client {
         log.info("Клиент запущен. Адрес сервера: {}", udpManager.getChannel().socket().getRemoteSocketAddress());
         Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
 
-        // Запускаем сетевые потоки
-        threadPool.submit(this::startNetworkListener);
-        threadPool.submit(this::startNetworkSender);
+        startNetwork();
 
         // Запускаем UI для консоли
         startConsoleUserInterface();
     }
 
+    /**
+     * Запускает сетевые потоки без консоли, например для пакетной работы через submit.
+     * Повторный вызов ничего не делает.
+     */
+    public void startNetwork() {
+        if (networkStarted.compareAndSet(false, true)) {
+            threadPool.submit(this::startNetworkListener);
+            threadPool.submit(this::startNetworkSender);
+        }
+    }
+
+    /**
+     * Асинхронно отправляет запрос с таймаутом по умолчанию.
+     * @see #submit(NetworkObject, long, TimeUnit)
+     */
+    public CompletableFuture<NetworkObject> submit(NetworkObject request) throws InterruptedException {
+        return submit(request, DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Асинхронно отправляет запрос на сервер.
+     * Запросу присваивается новый ID, по которому ответ находит свой future, поэтому
+     * одновременно могут выполняться сотни запросов. Если ответов ждут уже MAX_IN_FLIGHT запросов,
+     * метод блокируется, пока какой-нибудь из них не завершится. При надежной доставке он также ждет,
+     * пока в окне отправки не освободится место, то есть пока сервер не подтвердит более ранние запросы.
+     * Future завершается TimeoutException, если ответ не пришел за timeout; отмена future
+     * перестает ждать ответ, а опоздавший ответ отбрасывается.
+     * Для show и show_mine возвращается только первая страница, следующие запрашиваются через Show.nextPage.
+     * @param request запрос; его ID не используется
+     * @param timeout сколько ждать ответ
+     * @param unit единица измерения timeout
+     * @return future ответа сервера
+     */
+    public CompletableFuture<NetworkObject> submit(NetworkObject request, long timeout, TimeUnit unit) throws InterruptedException {
+        startNetwork();
+        inFlightPermits.acquire();
+        long id = requestIds.incrementAndGet();
+        NetworkObject numbered = new NetworkObject(id, request.status(), request.userLogin(), request.userPassword(),
+                request.command(), request.args(), request.data(), request.movie());
+
+        CompletableFuture<NetworkObject> future = new CompletableFuture<>();
+        inFlight.put(id, future);
+        future.orTimeout(timeout, unit).whenComplete((response, error) -> {
+            inFlight.remove(id, future);
+            inFlightPermits.release();
+        });
+        try {
+            udpManager.send(numbered);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * @return число запросов submit, ожидающих ответа
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
     private void startConsoleUserInterface() {
         // Создаем персональную очередь для ответов консольному пользователю
         BlockingQueue<NetworkObject> consoleResponseQueue = new LinkedBlockingQueue<>();
@@ -91,44 +184,119 @@ public class Client {
                 // Находим, из какой сессии пришел запрос, чтобы запомнить ID пользователя
                 // ВАЖНО: В UserSession необходимо будет указывать userLogin, чтобы здесь его найти.
                 // Для простоты, пока будем считать, что все запросы от CONSOLE_USER_ID
-                pendingRequests.put(request.id(), CONSOLE_USER_ID);
-                udpManager.send(request);
+                long id = request.id();
+                pendingRequests.put(id, CONSOLE_USER_ID);
+                if (PAGED_COMMANDS.contains(request.command())) {
+                    pagedRequests.put(id, request);
+                }
+                CompletableFuture.runAsync(() -> expireRequest(id),
+                        CompletableFuture.delayedExecutor(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+                try {
+                    udpManager.send(request);
+                } catch (IOException e) {
+                    log.error("Ошибка отправки данных: {}", e.getMessage());
+                    expireRequest(id);
+                }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-            } catch (IOException e) {
-                log.error("Ошибка отправки данных: {}", e.getMessage());
             }
         }
     }
 
+    /**
+     * Забывает запрос консоли, на который ответ не пришел за таймаут или который не удалось отправить,
+     * и сообщает об этом пользователю. Если ответ уже пришел, ничего не делает.
+     */
+    private void expireRequest(long id) {
+        pagedRequests.remove(id);
+        Long userId = pendingRequests.remove(id);
+        if (userId != null) {
+            BlockingQueue<NetworkObject> userQueue = responseQueues.get(userId);
+            if (userQueue != null) {
+                userQueue.offer(new NetworkObject(id, ApplicationStatus.ERROR, null, null, null, null,
+                        "Сервер не ответил на запрос", null));
+            }
+        }
+    }
+
+    /**
+     * Ждет датаграммы на Selector и вычитывает все готовые сразу.
+     * select просыпается не реже раза в TICK_MILLIS, чтобы обслуживать таймеры надежной доставки.
+     */
     private void startNetworkListener() {
-        while (isRunning.get()) {
-            try {
-                ReceiveObject received = udpManager.receive();
-                if (received != null && received.object() != null) {
-                    NetworkObject response = received.object();
-                    // Ищем, какому пользователю предназначается ответ
-                    Long userId = pendingRequests.remove(response.id());
-                    if (userId != null) {
-                        BlockingQueue<NetworkObject> userQueue = responseQueues.get(userId);
-                        if (userQueue != null) {
-                            userQueue.put(response); // Кладем ответ в персональную очередь пользователя
+        try (Selector networkSelector = Selector.open()) {
+            channel.register(networkSelector, SelectionKey.OP_READ);
+            selector = networkSelector;
+            long nextTick = System.nanoTime();
+            while (isRunning.get() && !Thread.currentThread().isInterrupted()) {
+                if (networkSelector.select(TICK_MILLIS) > 0) {
+                    Iterator<SelectionKey> keys = networkSelector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid() && key.isReadable()) {
+                            udpManager.drain(this::dispatchResponse);
                         }
                     }
                 }
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            } catch (Exception e) {
+                long now = System.nanoTime();
+                if (now - nextTick >= 0) {
+                    udpManager.tick();
+                    nextTick = now + TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+                }
+            }
+        } catch (IOException e) {
+            if (isRunning.get()) {
                 log.error("Ошибка получения данных: {}", e.getMessage());
             }
         }
     }
 
+    /**
+     * Передает ответ тому, кто ждет его: future из submit или очереди консольного пользователя.
+     */
+    private void dispatchResponse(ReceiveObject received) {
+        NetworkObject response = received.object();
+        if (response.id() == null) {
+            log.warn("Получен ответ без ID, отброшен");
+            return;
+        }
+        CompletableFuture<NetworkObject> future = inFlight.remove(response.id());
+        if (future != null) {
+            future.complete(response);
+            return;
+        }
+        requestNextPage(response);
+        // Ищем, какому пользователю предназначается ответ
+        Long userId = pendingRequests.remove(response.id());
+        if (userId != null) {
+            BlockingQueue<NetworkObject> userQueue = responseQueues.get(userId);
+            if (userQueue != null) {
+                userQueue.offer(response); // Кладем ответ в персональную очередь пользователя
+            }
+        }
+    }
+
+    /**
+     * Если ответ - страница show или show_mine с курсором, сразу запрашивает следующую,
+     * пока текущая выводится пользователю.
+     */
+    private void requestNextPage(NetworkObject response) {
+        NetworkObject previous = pagedRequests.remove(response.id());
+        if (previous != null && response.status() != ApplicationStatus.ERROR && response.args() != null) {
+            toServerQueue.offer(Show.nextPage(requestIds.incrementAndGet(), previous, response.args()));
+        }
+    }
+
     public void shutdown() {
         if (isRunning.getAndSet(false)) {
             log.info("Завершение работы клиента...");
+            Selector networkSelector = selector;
+            if (networkSelector != null) {
+                networkSelector.wakeup();
+            }
             threadPool.shutdownNow();
+            inFlight.values().forEach(future -> future.completeExceptionally(new CancellationException("Клиент остановлен")));
             try {
                 if (channel.isOpen()) channel.close();
             } catch (IOException e) {
@@ -0,0 +1,65 @@
+package com.example;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Настройки сетевого уровня клиента.
+ * Значения по умолчанию совпадают с настройками сервера по умолчанию.
+ * Из командной строки их можно переопределить системными свойствами с префиксом client.,
+ * например -Dclient.compression=false.
+ */
+@Getter
+@Setter
+public class ClientConfig {
+    private static final String PREFIX = "client.";
+
+    /**
+     * Надежная доставка запросов: сервер подтверждает их, потерянные куски повторяются по запросу.
+     */
+    private boolean reliableDelivery = true;
+    /**
+     * Сколько запросов может одновременно ждать подтверждения.
+     */
+    private int sendWindow = 64;
+    /**
+     * Через сколько без подтверждения повторять запрос в первый раз; дальше интервал удваивается.
+     */
+    private long retransmitTimeoutMillis = 200;
+    /**
+     * Сколько раз повторять неподтвержденный запрос, прежде чем бросить.
+     */
+    private int maxRetransmits = 5;
+
+    /**
+     * Сжатие запросов и прием сжатых ответов.
+     */
+    private boolean compression = true;
+    /**
+     * Запросы меньше этого размера в байтах не сжимаются.
+     */
+    private int compressionThreshold = 1024;
+    /**
+     * Уровень сжатия Deflate от 1 (быстро) до 9 (плотно).
+     */
+    private int compressionLevel = 1;
+
+    /**
+     * @return настройки по умолчанию, переопределенные заданными системными свойствами client.*
+     */
+    public static ClientConfig fromSystemProperties() {
+        ClientConfig config = new ClientConfig();
+        config.reliableDelivery = Boolean.parseBoolean(property("reliableDelivery", config.reliableDelivery));
+        config.sendWindow = Integer.parseInt(property("sendWindow", config.sendWindow));
+        config.retransmitTimeoutMillis = Long.parseLong(property("retransmitTimeoutMillis", config.retransmitTimeoutMillis));
+        config.maxRetransmits = Integer.parseInt(property("maxRetransmits", config.maxRetransmits));
+        config.compression = Boolean.parseBoolean(property("compression", config.compression));
+        config.compressionThreshold = Integer.parseInt(property("compressionThreshold", config.compressionThreshold));
+        config.compressionLevel = Integer.parseInt(property("compressionLevel", config.compressionLevel));
+        return config;
+    }
+
+    private static String property(String name, Object defaultValue) {
+        return System.getProperty(PREFIX + name, String.valueOf(defaultValue));
+    }
+}
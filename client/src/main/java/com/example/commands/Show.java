@@ -3,24 +3,55 @@ package com.example.commands;
 import com.example.common.command.Command;
 import com.example.common.network.ApplicationStatus;
 import com.example.common.network.NetworkObject;
-import com.example.common.network.PasswordHasher;
 import lombok.extern.log4j.Log4j2;
 
+/**
+ * Запрашивает коллекцию постранично.
+ * Сервер отвечает страницей и курсором следующей, клиент сам запрашивает продолжение,
+ * поэтому первые строки выводятся сразу, не дожидаясь всей коллекции.
+ */
 @Log4j2
 public class Show extends Command {
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
 
     public Show() {
-        super("show", "Выводит список фильмов из базы данных");
+        this("show", "Выводит список фильмов из базы данных. Аргумент: размер страницы (по умолчанию " + DEFAULT_PAGE_SIZE + ")");
+    }
+
+    protected Show(String name, String description) {
+        super(name, description);
     }
 
     @Override
     public NetworkObject execute(NetworkObject request) {
-        String[] args = request.args().split(" ");
-        if (!args.equals("")) {
-            return new NetworkObject(request.id(), ApplicationStatus.ERROR, null, null, null, "Неверное количество аргументов. Требуется: логин и пароль.", null, null);
+        String args = request.args() == null ? "" : request.args().trim();
+        int pageSize = DEFAULT_PAGE_SIZE;
+        if (!args.isEmpty()) {
+            try {
+                pageSize = Integer.parseInt(args);
+            } catch (NumberFormatException e) {
+                pageSize = -1;
+            }
+            if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+                return new NetworkObject(request.id(), ApplicationStatus.ERROR, null, null, null, null, "Размер страницы должен быть числом от 1 до " + MAX_PAGE_SIZE, null);
+            }
         }
 
-        log.info("Клиент: Создание запроса на получение содержимого коллекции");
-        return new NetworkObject(request.id(), ApplicationStatus.RUNNING, request.userLogin(), request.userPassword(), getName(), null, null, null);
+        log.info("Клиент: Создание запроса {}", getName());
+        return new NetworkObject(request.id(), ApplicationStatus.RUNNING, request.userLogin(), request.userPassword(), getName(), String.valueOf(pageSize), null, null);
+    }
+
+    /**
+     * Создает запрос следующей страницы.
+     * @param id ID нового запроса из генератора клиента
+     * @param previous предыдущий запрос show
+     * @param cursor курсор из ответа на него
+     * @return запрос с id, тем же размером страницы и курсором
+     */
+    public static NetworkObject nextPage(long id, NetworkObject previous, String cursor) {
+        String pageSize = previous.args().trim().split("\\s+")[0];
+        return new NetworkObject(id, ApplicationStatus.RUNNING, previous.userLogin(), previous.userPassword(),
+                previous.command(), pageSize + " " + cursor, null, null);
     }
 }
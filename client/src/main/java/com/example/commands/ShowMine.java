@@ -0,0 +1,10 @@
+package com.example.commands;
+
+/**
+ * Постранично запрашивает фильмы текущего пользователя.
+ */
+public class ShowMine extends Show {
+    public ShowMine() {
+        super("show_mine", "Выводит ваши фильмы. Аргумент: размер страницы (по умолчанию " + DEFAULT_PAGE_SIZE + ")");
+    }
+}
@@ -0,0 +1,145 @@
+package com.example;
+
+import com.example.common.network.ApplicationStatus;
+import com.example.common.network.NetworkObject;
+import com.example.common.network.NetworkObjectBuilder;
+import com.example.common.network.UDPManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Клиент против сервера-заглушки на loopback. Заглушка отвечает на echo сразу,
+ * на slow - через SLOW_MILLIS, а на silent не отвечает вовсе.
+ */
+class ClientTest {
+    private static final long SLOW_MILLIS = 300;
+
+    private DatagramChannel peerChannel;
+    private Thread peer;
+    private Client client;
+
+    @BeforeEach
+    void startPeer() throws IOException {
+        peerChannel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        peerChannel.configureBlocking(false);
+        UDPManager udpManager = new UDPManager(peerChannel, new NetworkObjectBuilder());
+        peer = new Thread(() -> servePeer(udpManager));
+        peer.setDaemon(true);
+        peer.start();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        if (client != null) {
+            client.shutdown();
+        }
+        peer.interrupt();
+        peer.join();
+        peerChannel.close();
+    }
+
+    @Test
+    void completesHundredsOfPipelinedRequestsThroughSmallWindow() throws Exception {
+        // Окно меньше числа запросов: лишние ждут ACK, а не вытесняют неподтвержденные
+        client = client(8);
+        List<CompletableFuture<NetworkObject>> futures = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            futures.add(client.submit(request("echo", "запрос " + i)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("запрос " + i, futures.get(i).get(10, TimeUnit.SECONDS).data());
+        }
+        assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    void unansweredRequestTimesOut() throws Exception {
+        client = client(8);
+        CompletableFuture<NetworkObject> future = client.submit(request("silent", null), 200, TimeUnit.MILLISECONDS);
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, error.getCause());
+        assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    void cancelledRequestIgnoresLateResponse() throws Exception {
+        client = client(8);
+        CompletableFuture<NetworkObject> slow = client.submit(request("slow", "поздно"));
+        assertTrue(slow.cancel(true));
+        assertEquals(0, client.getInFlight());
+
+        Thread.sleep(SLOW_MILLIS * 2);
+        assertTrue(slow.isCancelled());
+        assertEquals("после", client.submit(request("echo", "после")).get(5, TimeUnit.SECONDS).data());
+        assertEquals(0, client.getInFlight());
+    }
+
+    private Client client(int sendWindow) throws IOException {
+        ClientConfig config = new ClientConfig();
+        config.setSendWindow(sendWindow);
+        InetSocketAddress address = (InetSocketAddress) peerChannel.getLocalAddress();
+        return new Client(address.getHostString(), address.getPort(), config);
+    }
+
+    private static NetworkObject request(String command, String data) {
+        return new NetworkObject(0L, ApplicationStatus.RUNNING, null, null, command, null, data, null);
+    }
+
+    private static void servePeer(UDPManager udpManager) {
+        List<Delayed> delayed = new ArrayList<>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                udpManager.drain(received -> {
+                    NetworkObject request = received.object();
+                    NetworkObject response = new NetworkObject(request.id(), ApplicationStatus.RUNNING, null, null,
+                            null, null, request.data(), null);
+                    switch (request.command()) {
+                        case "echo" -> send(udpManager, response, received.address());
+                        case "slow" -> delayed.add(new Delayed(response, received.address(),
+                                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SLOW_MILLIS)));
+                        default -> { }
+                    }
+                });
+                long now = System.nanoTime();
+                delayed.removeIf(answer -> {
+                    if (now - answer.dueNanos() < 0) {
+                        return false;
+                    }
+                    send(udpManager, answer.response(), answer.address());
+                    return true;
+                });
+                udpManager.tick();
+                Thread.sleep(1);
+            }
+        } catch (IOException e) {
+            // Канал закрыт после теста
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void send(UDPManager udpManager, NetworkObject response, InetSocketAddress address) {
+        try {
+            udpManager.send(response, address);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Delayed(NetworkObject response, InetSocketAddress address, long dueNanos) {
+    }
+}
@@ -20,6 +20,33 @@ public abstract class Command {
         return new NetworkObject(request.id(), ApplicationStatus.RUNNING, request.userLogin(), "", "", "", "Команда успешно выполнена", null);
     }
 
+    /**
+     * Показывает, что команда дешевая и не блокируется: работает только с памятью,
+     * не ходит в бд и не ждет других потоков.
+     * Такие команды сервер может выполнить прямо в потоке чтения.
+     * @return true для неблокирующих команд
+     */
+    public boolean isNonBlocking() {
+        return false;
+    }
+
+    /**
+     * Показывает, что команду можно выполнить только после проверки логина и пароля из запроса.
+     * @return true для команд, доступных только аутентифицированному пользователю
+     */
+    public boolean requiresAuthentication() {
+        return false;
+    }
+
+    /**
+     * Класс команды для планирования и сброса нагрузки на сервере.
+     * По умолчанию команда считается изменяющей данные.
+     * @return класс команды
+     */
+    public CommandClass getCommandClass() {
+        return CommandClass.WRITE;
+    }
+
     @Override
     public String toString(){
         return getName() + ": " + getDescription();
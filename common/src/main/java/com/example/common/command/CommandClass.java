@@ -0,0 +1,24 @@
+package com.example.common.command;
+
+/**
+ * Класс команды с точки зрения нагрузки на сервер.
+ * По нему сервер решает, какие запросы отбрасывать при перегрузке и в какой порядке выполнять.
+ */
+public enum CommandClass {
+    /**
+     * Только читает коллекцию в памяти.
+     */
+    READ,
+    /**
+     * Изменяет бд и коллекцию.
+     */
+    WRITE,
+    /**
+     * Аутентификация и регистрация пользователей.
+     */
+    AUTH,
+    /**
+     * Служебные команды сервера.
+     */
+    ADMIN
+}
@@ -22,6 +22,38 @@ public class CommandManager {
     public void addCommand(Command command){
         commandMap.put(command.getName(), command);
     }
+
+    /**
+     * Проверяет, зарегистрирована ли команда с таким именем и является ли она неблокирующей.
+     * @param name имя команды
+     * @return true, если команду можно выполнить без ожидания
+     */
+    public boolean isNonBlocking(String name) {
+        Command command = name == null ? null : commandMap.get(name);
+        return command != null && command.isNonBlocking();
+    }
+
+    /**
+     * Проверяет, требует ли команда с таким именем аутентификации.
+     * @param name имя команды
+     * @return true, если команду можно выполнить только после проверки логина и пароля
+     */
+    public boolean requiresAuthentication(String name) {
+        Command command = name == null ? null : commandMap.get(name);
+        return command != null && command.requiresAuthentication();
+    }
+
+    /**
+     * Возвращает класс команды по имени.
+     * Неизвестная команда считается дешевым чтением: сервер просто ответит ошибкой.
+     * @param name имя команды
+     * @return класс команды
+     */
+    public CommandClass getCommandClass(String name) {
+        Command command = name == null ? null : commandMap.get(name);
+        return command != null ? command.getCommandClass() : CommandClass.READ;
+    }
+
     public NetworkObject executeCommand(NetworkObject request){
         String message;
         try {
@@ -39,7 +71,7 @@ public class CommandManager {
         }
     }
 
-    public void addHistory(String name) {
+    public synchronized void addHistory(String name) {
         if (history.size() == 8) {
             history.pollFirst();
             log.info("история переполнена, последний элемент удален");
@@ -5,6 +5,8 @@ import lombok.Setter;
 
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.lang.Comparable;
 import java.util.HashMap;
@@ -13,7 +15,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class Movie implements Comparable<Movie>, Serializable {
-    private final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     @Getter @Setter
     private int id;
     @Getter @Setter
@@ -75,11 +77,35 @@ public class Movie implements Comparable<Movie>, Serializable {
         this.ownerLogin = ownerLogin;
     }
 
+    private Movie() {
+    }
+
+    /**
+     * Восстанавливает фильм из принятого сообщения как есть: в отличие от конструкторов,
+     * не подставляет текущую дату вместо отсутствующей даты создания.
+     */
+    public static Movie restore(int id, String name, Coordinates coordinates, Date creationDate,
+                                long oscarsCount, Long usaBoxOffice, MovieGenre genre,
+                                MpaaRating mpaaRating, Person director, String ownerLogin) {
+        Movie movie = new Movie();
+        movie.id = id;
+        movie.name = name;
+        movie.coordinates = coordinates;
+        movie.creationDate = creationDate;
+        movie.oscarsCount = oscarsCount;
+        movie.usaBoxOffice = usaBoxOffice;
+        movie.genre = genre;
+        movie.mpaaRating = mpaaRating;
+        movie.director = director;
+        movie.ownerLogin = ownerLogin;
+        return movie;
+    }
+
     @Override
     public String toString(){
         return String.format(
             "Movie{id=%s, name='%s', coordinates=%s, creationDate=%s, oscarsCount=%s, usaBoxOffice=%s%s%s%s, owner_id=%s}",
-            id, name, coordinates, DATE_FORMAT.format(creationDate), oscarsCount, usaBoxOffice,
+            id, name, coordinates, DATE_FORMAT.format(creationDate.toInstant().atZone(ZoneId.systemDefault())), oscarsCount, usaBoxOffice,
             (genre != null ? ", genre=" + genre : ""),
             (mpaaRating != null ? ", mpaaRating=" + mpaaRating : ""),
             (director != null ? ", director=" + director : ""), ownerLogin
@@ -29,6 +29,23 @@ public class Person implements Serializable {
         this.passportID = passportID.trim();
     }
 
+    private Person() {
+    }
+
+    /**
+     * Восстанавливает человека из принятого сообщения как есть, без нормализации:
+     * отправитель уже нормализовал поля, а номера паспорта может не быть.
+     */
+    public static Person restore(String name, Date birthday, Long height, int weight, String passportID) {
+        Person person = new Person();
+        person.name = name;
+        person.birthday = birthday;
+        person.height = height;
+        person.weight = weight;
+        person.passportID = passportID;
+        return person;
+    }
+
     @Override
     public String toString(){
         return "Person{name=" + name + ", birthday=" + DATE_FORMAT.format(birthday)
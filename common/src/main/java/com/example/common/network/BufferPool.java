@@ -0,0 +1,91 @@
+package com.example.common.network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Пул direct-буферов одинакового размера для приема и отправки датаграмм.
+ * Буферы выделяются лениво: пока пул пуст, acquire создает новый буфер (промах),
+ * а release возвращает его в пул, если там есть место. После прогрева
+ * прием и отправка берут буферы только из пула и ничего не выделяют.
+ * Потокобезопасен.
+ */
+public class BufferPool {
+    public static final int DEFAULT_MAX_POOLED = 64;
+
+    private final int bufferSize;
+    private final ArrayBlockingQueue<ByteBuffer> pooled;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    /**
+     * @param bufferSize размер каждого буфера в байтах
+     * @param maxPooled сколько свободных буферов пул хранит; лишние при возврате отдаются сборщику мусора
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0 || maxPooled <= 0) {
+            throw new IllegalArgumentException("Размер буфера и пула должны быть положительными");
+        }
+        this.bufferSize = bufferSize;
+        this.pooled = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * Пул буферов под датаграмму максимального размера.
+     */
+    public BufferPool() {
+        this(NetworkPacket.MAX_DATAGRAM_SIZE, DEFAULT_MAX_POOLED);
+    }
+
+    /**
+     * @return очищенный буфер размера bufferSize
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = pooled.poll();
+        if (buffer == null) {
+            misses.increment();
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        hits.increment();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Возвращает буфер в пул. После вызова буфер нельзя использовать.
+     * @param buffer буфер, полученный из acquire
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize || !buffer.isDirect()) {
+            return;
+        }
+        if (!pooled.offer(buffer)) {
+            discarded.increment();
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getDiscarded() {
+        return discarded.sum();
+    }
+
+    /**
+     * @return число свободных буферов в пуле
+     */
+    public int getPooled() {
+        return pooled.size();
+    }
+}
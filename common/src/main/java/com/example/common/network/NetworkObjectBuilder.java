@@ -1,53 +1,475 @@
 package com.example.common.network;
 
-import com.example.common.network.serializer.NetworkSerializer;
+import com.example.common.network.serializer.CodecType;
+import com.example.common.network.serializer.SerializeException;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Класс для многопоточной сборки NetworkObject из NetworkPacket.
+ * Сообщение из одного пакета декодируется прямо из буфера датаграммы.
+ * Составное сообщение собирается в блоки из пула буферов: каждый кусок кладется по смещению
+ * из заголовка, поэтому мелкие куски не занимают по отдельному буферу датаграммы.
+ * Блок берется из пула, только когда в него приходит первый кусок, поэтому память растет
+ * вместе с реально полученными данными, а не с длиной, объявленной в заголовке.
+ * Сообщение длиннее одного блока после сборки копируется в один буфер.
+ * Незавершенные сообщения различаются по адресу отправителя и номеру сообщения,
+ * выбрасываются по таймауту с первого куска, а при превышении бюджета памяти
+ * вытесняются, начиная с самых старых. Один отправитель может занять не больше
+ * 1/SENDER_SHARE бюджета и при превышении теснит только свои сообщения.
+ * Для сообщений с флагом надежной доставки сборщик через Feedback подтверждает сборку
+ * и запрашивает недостающие куски, если сообщение долго не продвигается.
+ * Собранные надежные сообщения запоминаются на время таймаута, чтобы повтор не выполнился дважды.
  */
 @Log4j2
 public class NetworkObjectBuilder {
-    private final Map<Long, Map<Integer, byte[]>> packets = new ConcurrentHashMap<>();
-    private final NetworkSerializer serializer = new NetworkSerializer();
+    public static final long DEFAULT_MAX_BUFFERED_BYTES = 32L << 20;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+    /**
+     * Сколько сообщение может не продвигаться, прежде чем запросить недостающие куски.
+     */
+    private static final long NACK_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int MAX_NACK_ROUNDS = 8;
+    /**
+     * Сколько номеров кусков помещается в один NACK.
+     */
+    private static final int MAX_NACK_INDICES = 1024;
+    private static final int MAX_COMPLETED = 4096;
+    /**
+     * На сколько отправителей делится бюджет сборки.
+     */
+    private static final int SENDER_SHARE = 4;
+
+    /**
+     * Незавершенные сообщения в порядке прихода первого куска, поэтому самые старые - в начале.
+     */
+    private final LinkedHashMap<MessageKey, PartialMessage> packets = new LinkedHashMap<>();
+    /**
+     * Недавно собранные надежные сообщения и время сборки, в порядке сборки.
+     */
+    private final LinkedHashMap<MessageKey, Long> completed = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MessageKey, Long> eldest) {
+            return size() > MAX_COMPLETED;
+        }
+    };
+    /**
+     * Память буферов незавершенных сообщений по отправителям.
+     */
+    private final Map<InetSocketAddress, Long> bufferedBySender = new HashMap<>();
+    private final int[] missing = new int[MAX_NACK_INDICES];
+    @Setter
+    private Feedback feedback = Feedback.NONE;
+    /**
+     * Принимать ли сжатые сообщения; без включенного сжатия они отбрасываются, не доходя до распаковки.
+     */
+    @Setter
+    private volatile boolean acceptCompressed;
+    @Getter
+    private final BufferPool bufferPool;
+    private final long maxBufferedBytes;
+    private final long maxBufferedBytesPerSender;
+    private final long timeoutNanos;
+    private long bufferedBytes;
+    private final LongAdder fragmentsReceived = new LongAdder();
+    private final LongAdder messagesAssembled = new LongAdder();
+    private final LongAdder duplicateFragments = new LongAdder();
+    private final LongAdder expiredMessages = new LongAdder();
+    private final LongAdder evictedMessages = new LongAdder();
+
+    /**
+     * @param bufferPool пул, из которого берутся буферы датаграмм и сборки
+     * @param maxBufferedBytes сколько памяти буферов могут занимать все незавершенные сообщения;
+     *                         незавершенные сообщения одного отправителя - не больше 1/SENDER_SHARE от нее
+     * @param timeout сколько ждать недостающие куски с момента прихода первого
+     * @param unit единица измерения timeout
+     */
+    public NetworkObjectBuilder(BufferPool bufferPool, long maxBufferedBytes, long timeout, TimeUnit unit) {
+        if (maxBufferedBytes < bufferPool.getBufferSize() || timeout <= 0) {
+            throw new IllegalArgumentException("Бюджет сборки должен вмещать хотя бы один пакет, таймаут - быть положительным");
+        }
+        this.bufferPool = bufferPool;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.maxBufferedBytesPerSender = Math.max(bufferPool.getBufferSize(), maxBufferedBytes / SENDER_SHARE);
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * @param bufferPool пул, из которого берутся буферы датаграмм
+     */
+    public NetworkObjectBuilder(BufferPool bufferPool) {
+        this(bufferPool, DEFAULT_MAX_BUFFERED_BYTES, DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public NetworkObjectBuilder() {
+        this(new BufferPool());
+    }
 
     /**
      * Собирает пакеты в единое сообщение.
-     * Добавляет в общую мапу пакетов все пакеты.
      * Когда все составные части какого-то сообщения на месте, возвращает этот NetworkObject.
      * В противном случае возвращает null.
      * @param packet составная част пакета
+     * @param sender адрес отправителя пакета
      * @return готовый NetworkObject или null
      */
-    public NetworkObject build(NetworkPacket packet) throws IOException, ClassNotFoundException {
-        long requestId = packet.requestId();
-        int packetIndex = packet.packetIndex();
+    public NetworkObject build(NetworkPacket packet, InetSocketAddress sender) throws IOException, ClassNotFoundException {
         int totalPackets = packet.totalPackets();
+        ByteBuffer payload = packet.payload();
 
-        Map<Integer, byte[]> parts = packets.computeIfAbsent(requestId, k -> new ConcurrentSkipListMap<>());
-        parts.put(packetIndex, packet.dataBytes());
-        log.info("Пакет {}:{} успешно добавлен в мапу", packet.requestId(), packet.packetIndex());
+        fragmentsReceived.increment();
+        if (packet.isCompressed() && !acceptCompressed) {
+            throw new SerializeException("Сжатие не включено, сжатое сообщение " + packet.requestId() + " отброшено");
+        }
+        boolean reliable = packet.isReliable();
+        MessageKey key = reliable || totalPackets > 1 ? new MessageKey(sender, packet.requestId()) : null;
+        if (reliable && isCompleted(key)) {
+            duplicateFragments.increment();
+            feedback.acknowledge(sender, packet.requestId(), totalPackets);
+            return null;
+        }
+        if (totalPackets == 1) {
+            NetworkObject object = decode(payload, packet.isCompressed());
+            messagesAssembled.increment();
+            if (reliable) {
+                markCompleted(key);
+                feedback.acknowledge(sender, packet.requestId(), totalPackets);
+            }
+            return object;
+        }
 
-        if (parts.size() == totalPackets) {
-            int totalLength = parts.values().stream().mapToInt(b -> b.length).sum();
-            byte[] data = new byte[totalLength];
-            int current = 0;
-            for (byte[] partData : parts.values()) {
-                System.arraycopy(partData, 0, data, current, partData.length);
-                current += partData.length;
+        PartialMessage complete = addFragment(key, packet);
+        if (complete == null) {
+            return null;
+        }
+        messagesAssembled.increment();
+        log.debug("Сообщение {} от {} полностью получено в виде байт", packet.requestId(), sender);
+        NetworkObject object;
+        try {
+            object = decode(complete.contents(bufferPool.getBufferSize()), complete.compressed);
+        } finally {
+            release(complete);
+        }
+        if (complete.reliable) {
+            feedback.acknowledge(sender, packet.requestId(), totalPackets);
+        }
+        return object;
+    }
+
+    private static NetworkObject decode(ByteBuffer data, boolean compressed) throws IOException {
+        if (compressed) {
+            data = PayloadCompressor.inflate(data);
+        }
+        return CodecType.detect(data).decode(data);
+    }
+
+    private synchronized boolean isCompleted(MessageKey key) {
+        return completed.containsKey(key);
+    }
+
+    private synchronized void markCompleted(MessageKey key) {
+        completed.put(key, System.nanoTime());
+    }
+
+    /**
+     * Кладет кусок в незавершенное сообщение.
+     * @return сообщение, если этот кусок был последним недостающим, иначе null
+     */
+    private synchronized PartialMessage addFragment(MessageKey key, NetworkPacket packet) {
+        long now = System.nanoTime();
+        expire(now);
+
+        int totalPackets = packet.totalPackets();
+        int packetIndex = packet.packetIndex();
+        int messageLength = packet.messageLength();
+        PartialMessage message = packets.get(key);
+        if (message == null) {
+            if (messageLength > maxBufferedBytesPerSender) {
+                evictedMessages.increment();
+                log.debug("Сообщение {} от {} длиной {} не помещается в бюджет сборки", key.requestId(), key.sender(), messageLength);
+                return null;
             }
-            log.info("Сообщение {} полностью получено в виде байт", packet.requestId());
+            // Куски не меньше минимального, иначе малое сообщение заставило бы хранить огромный список кусков
+            if (totalPackets > messageLength / NetworkPacket.MIN_PAYLOAD_SIZE + 1) {
+                log.debug("Сообщение {} от {} разбито на слишком мелкие куски, отброшено", key.requestId(), key.sender());
+                return null;
+            }
+            int chunks = (int) Math.max(1, ((long) messageLength + bufferPool.getBufferSize() - 1) / bufferPool.getBufferSize());
+            message = new PartialMessage(chunks, totalPackets, messageLength, now, packet.isReliable(), packet.isCompressed());
+            packets.put(key, message);
+        } else if (message.received.length != totalPackets || message.length != messageLength) {
+            log.debug("Пакет {}:{} от {} противоречит заголовку сообщения, отброшен", key.requestId(), packetIndex, key.sender());
+            return null;
+        }
+        if (message.received[packetIndex]) {
+            duplicateFragments.increment();
+            return null;
+        }
+
+        store(key.sender(), message, packet.offset(), packet.payload());
+        if (!makeRoom(key)) {
+            return null;
+        }
+        message.received[packetIndex] = true;
+        message.receivedCount++;
+        message.lastProgressNanos = now;
+        message.nackRounds = 0;
+        log.debug("Пакет {}:{} от {} добавлен к сообщению", key.requestId(), packetIndex, key.sender());
 
-            packets.remove(requestId);
-            log.info("Пакеты сообщения {} удалены из мапы", packet.requestId());
-            return serializer.deserialize(data);
+        if (message.receivedCount == totalPackets) {
+            packets.remove(key);
+            if (message.reliable) {
+                completed.put(key, now);
+            }
+            account(key.sender(), -message.bufferedBytes);
+            return message;
         }
-        log.info("Никакое сообещение не собрано полностью, возвращен null");
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * Выбрасывает сообщения, недостающие куски которых не пришли за таймаут.
+     * Вызывается при каждом составном пакете; на простаивающем канале его стоит вызывать периодически.
+     */
+    public synchronized void expire() {
+        expire(System.nanoTime());
+    }
+
+    /**
+     * Выбрасывает просроченные сообщения и запрашивает недостающие куски
+     * у надежных сообщений, которые не продвигались дольше NACK_DELAY.
+     * Должен вызываться периодически, чаще, чем NACK_DELAY.
+     */
+    public synchronized void tick() {
+        long now = System.nanoTime();
+        expire(now);
+        for (Map.Entry<MessageKey, PartialMessage> entry : packets.entrySet()) {
+            PartialMessage message = entry.getValue();
+            if (!message.reliable || now - message.lastProgressNanos < NACK_DELAY_NANOS
+                    || message.nackRounds >= MAX_NACK_ROUNDS) {
+                continue;
+            }
+            int count = 0;
+            for (int i = 0; i < message.received.length && count < missing.length; i++) {
+                if (!message.received[i]) {
+                    missing[count++] = i;
+                }
+            }
+            MessageKey key = entry.getKey();
+            feedback.requestMissing(key.sender(), key.requestId(), message.received.length, missing, count);
+            message.lastProgressNanos = now;
+            message.nackRounds++;
+            log.debug("Запрошено {} недостающих пакетов сообщения {} от {}", count, key.requestId(), key.sender());
+        }
+    }
+
+    private void expire(long now) {
+        Iterator<Long> completedAt = completed.values().iterator();
+        while (completedAt.hasNext() && now - completedAt.next() >= timeoutNanos) {
+            completedAt.remove();
+        }
+
+        Iterator<Map.Entry<MessageKey, PartialMessage>> iterator = packets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<MessageKey, PartialMessage> entry = iterator.next();
+            if (now - entry.getValue().startedNanos < timeoutNanos) {
+                return;
+            }
+            iterator.remove();
+            discard(entry.getKey(), entry.getValue());
+            expiredMessages.increment();
+            log.debug("Сообщение {} от {} не собрано за отведенное время", entry.getKey().requestId(), entry.getKey().sender());
+        }
+    }
+
+    /**
+     * Копирует кусок в блоки сообщения, беря из пула блоки, в которые он попадает впервые.
+     */
+    private void store(InetSocketAddress sender, PartialMessage message, int offset, ByteBuffer payload) {
+        int chunkSize = bufferPool.getBufferSize();
+        int position = payload.position();
+        int end = payload.limit();
+        while (position < end) {
+            int chunk = offset / chunkSize;
+            int within = offset % chunkSize;
+            if (message.chunks[chunk] == null) {
+                message.chunks[chunk] = bufferPool.acquire();
+                message.bufferedBytes += chunkSize;
+                account(sender, chunkSize);
+            }
+            int length = Math.min(end - position, chunkSize - within);
+            message.chunks[chunk].put(within, payload, position, length);
+            position += length;
+            offset += length;
+        }
+    }
+
+    /**
+     * Возвращает память в бюджет: сначала отправитель key теснит свои самые старые сообщения,
+     * затем, если превышен общий бюджет, вытесняются самые старые сообщения всех отправителей.
+     * @return осталось ли сообщение key в сборке
+     */
+    private boolean makeRoom(MessageKey key) {
+        InetSocketAddress sender = key.sender();
+        while (bufferedBySender.getOrDefault(sender, 0L) > maxBufferedBytesPerSender) {
+            Iterator<Map.Entry<MessageKey, PartialMessage>> iterator = packets.entrySet().iterator();
+            Map.Entry<MessageKey, PartialMessage> eldest = iterator.next();
+            while (!eldest.getKey().sender().equals(sender)) {
+                eldest = iterator.next();
+            }
+            iterator.remove();
+            discard(eldest.getKey(), eldest.getValue());
+            evictedMessages.increment();
+        }
+        while (bufferedBytes > maxBufferedBytes && packets.size() > 1) {
+            Iterator<Map.Entry<MessageKey, PartialMessage>> iterator = packets.entrySet().iterator();
+            Map.Entry<MessageKey, PartialMessage> eldest = iterator.next();
+            iterator.remove();
+            discard(eldest.getKey(), eldest.getValue());
+            evictedMessages.increment();
+        }
+        return packets.containsKey(key);
+    }
+
+    /**
+     * Учитывает изменение памяти буферов отправителя.
+     */
+    private void account(InetSocketAddress sender, long delta) {
+        bufferedBytes += delta;
+        bufferedBySender.merge(sender, delta, (current, change) -> current + change == 0 ? null : current + change);
+    }
+
+    private void discard(MessageKey key, PartialMessage message) {
+        account(key.sender(), -message.bufferedBytes);
+        release(message);
+    }
+
+    /**
+     * Возвращает блоки сборки в пул.
+     */
+    private void release(PartialMessage message) {
+        for (ByteBuffer chunk : message.chunks) {
+            bufferPool.release(chunk);
+        }
+    }
+
+    public long getFragmentsReceived() {
+        return fragmentsReceived.sum();
+    }
+
+    public long getMessagesAssembled() {
+        return messagesAssembled.sum();
+    }
+
+    public long getDuplicateFragments() {
+        return duplicateFragments.sum();
+    }
+
+    public long getExpiredMessages() {
+        return expiredMessages.sum();
+    }
+
+    public long getEvictedMessages() {
+        return evictedMessages.sum();
+    }
+
+    /**
+     * @return число сообщений, для которых получены не все пакеты
+     */
+    public synchronized int getPendingMessages() {
+        return packets.size();
+    }
+
+    /**
+     * @return память буферов, занятая незавершенными сообщениями
+     */
+    public synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    private record MessageKey(InetSocketAddress sender, long requestId) {
+    }
+
+    private static final class PartialMessage {
+        /**
+         * Блоки сообщения размером с буфер пула; блок, в который не пришло ни одного куска, равен null.
+         */
+        private final ByteBuffer[] chunks;
+        private final boolean[] received;
+        private final int length;
+        private final long startedNanos;
+        private final boolean reliable;
+        private final boolean compressed;
+        private long lastProgressNanos;
+        private int nackRounds;
+        private int receivedCount;
+        private long bufferedBytes;
+
+        private PartialMessage(int chunks, int totalPackets, int length, long startedNanos, boolean reliable, boolean compressed) {
+            this.chunks = new ByteBuffer[chunks];
+            this.received = new boolean[totalPackets];
+            this.length = length;
+            this.startedNanos = startedNanos;
+            this.reliable = reliable;
+            this.compressed = compressed;
+            this.lastProgressNanos = startedNanos;
+        }
+
+        /**
+         * Сообщение из одного блока читается прямо из блока, более длинное копируется в один буфер.
+         * Блоки остаются за сообщением и возвращаются в пул через release.
+         * @param chunkSize размер блока
+         * @return собранное сообщение от начала до длины
+         */
+        private ByteBuffer contents(int chunkSize) {
+            if (chunks.length == 1 && chunks[0] != null) {
+                return chunks[0].duplicate().position(0).limit(length);
+            }
+            ByteBuffer data = ByteBuffer.allocate(length);
+            for (int i = 0; i < chunks.length; i++) {
+                if (chunks[i] != null) {
+                    data.put(i * chunkSize, chunks[i], 0, Math.min(chunkSize, length - i * chunkSize));
+                }
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Обратная связь отправителю надежных сообщений.
+     * Вызывается под блокировкой сборщика, поэтому должна только отправлять пакет и не ждать.
+     */
+    public interface Feedback {
+        Feedback NONE = new Feedback() {
+            @Override
+            public void acknowledge(InetSocketAddress sender, long requestId, int totalPackets) {
+            }
+
+            @Override
+            public void requestMissing(InetSocketAddress sender, long requestId, int totalPackets, int[] indices, int count) {
+            }
+        };
+
+        /**
+         * Сообщение собрано, повторять его не нужно.
+         */
+        void acknowledge(InetSocketAddress sender, long requestId, int totalPackets);
+
+        /**
+         * Сообщение не собрано, нужны куски с номерами indices[0..count).
+         * Массив переиспользуется и действителен только во время вызова.
+         */
+        void requestMissing(InetSocketAddress sender, long requestId, int totalPackets, int[] indices, int count);
+    }
+}
@@ -1,13 +1,248 @@
 package com.example.common.network;
 
-import java.io.Serializable;
+import com.example.common.network.serializer.SerializeException;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
 
 /**
- * Класс для передачи NetworkObject по составным пакетам
+ * Составная часть NetworkObject, передаваемая одной датаграммой.
+ * На проводе пакет - это фиксированный бинарный заголовок, за которым сразу идет кусок сообщения:
+ * <pre>
+ * magic(2) version(1) type(1) flags(1) requestId(8) packetIndex(4) totalPackets(4)
+ * messageLength(4) offset(4) length(4) crc32c(4)
+ * </pre>
+ * Заголовок пишется прямо в буфер отправки, поэтому кусок не копируется в отдельный массив
+ * и не сериализуется второй раз. Длина сообщения и смещение куска позволяют получателю
+ * собирать сообщение сразу в один буфер нужного размера, каким бы ни был размер кусков.
+ * Кроме кусков сообщений (DATA) тем же заголовком передаются служебные пакеты:
+ * ACK подтверждает сборку сообщения, NACK перечисляет номера недостающих кусков,
+ * PROBE и PROBE_ACK проверяют, доходит ли до получателя датаграмма заданного размера.
+ * @param type тип пакета
+ * @param flags флаги пакета
  * @param requestId номер сообщения
  * @param totalPackets число составных частей
  * @param packetIndex номер составной части
- * @param dataBytes информация в байтах
+ * @param messageLength длина всего сообщения
+ * @param offset смещение куска в сообщении
+ * @param payload буфер принятой датаграммы, позиция и предел которого ограничивают кусок сообщения
  */
-public record NetworkPacket(long requestId, int totalPackets, int packetIndex, byte[] dataBytes) implements Serializable {
+public record NetworkPacket(byte type, byte flags, long requestId, int totalPackets, int packetIndex,
+                            int messageLength, int offset, ByteBuffer payload) {
+    public static final short MAGIC = 0x4C37;
+    public static final byte VERSION = 2;
+    public static final byte TYPE_DATA = 0;
+    public static final byte TYPE_ACK = 1;
+    public static final byte TYPE_NACK = 2;
+    public static final byte TYPE_PROBE = 3;
+    public static final byte TYPE_PROBE_ACK = 4;
+    /**
+     * Отправитель ждет подтверждения сообщения и повторит недостающие куски по NACK.
+     */
+    public static final byte FLAG_RELIABLE = 1;
+    /**
+     * Сообщение сжато PayloadCompressor.
+     */
+    public static final byte FLAG_COMPRESSED = 2;
+    /**
+     * Отправитель умеет распаковывать сжатые сообщения, ему можно отвечать сжатыми.
+     */
+    public static final byte FLAG_ACCEPTS_DEFLATE = 4;
+    public static final int HEADER_SIZE = 2 + 1 + 1 + 1 + 8 + 4 + 4 + 4 + 4 + 4 + 4;
+    /**
+     * Максимальный размер полезной нагрузки UDP-датаграммы.
+     */
+    public static final int MAX_DATAGRAM_SIZE = 65507;
+    /**
+     * Максимальный размер куска сообщения в одной датаграмме.
+     */
+    public static final int MAX_PAYLOAD_SIZE = MAX_DATAGRAM_SIZE - HEADER_SIZE;
+    /**
+     * Датаграмма, которая проходит канал с MTU 1500 без IP-фрагментации: 1500 - 20 (IPv4) - 8 (UDP).
+     */
+    public static final int MTU_SAFE_DATAGRAM_SIZE = 1472;
+    /**
+     * Размер куска по умолчанию: датаграмма с ним не фрагментируется на уровне IP.
+     */
+    public static final int MTU_SAFE_PAYLOAD_SIZE = MTU_SAFE_DATAGRAM_SIZE - HEADER_SIZE;
+    /**
+     * Минимальный размер куска: датаграмму в 576 байт обязан принять любой узел IPv4.
+     */
+    public static final int MIN_PAYLOAD_SIZE = 576 - 20 - 8 - HEADER_SIZE;
+
+    private static final ThreadLocal<CRC32C> CHECKSUM = ThreadLocal.withInitial(CRC32C::new);
+
+    /**
+     * Записывает в буфер заголовок и кусок сообщения.
+     * Буфер очищается перед записью и после нее готов к отправке.
+     * @param target буфер отправки
+     * @param flags флаги пакета
+     * @param requestId номер сообщения
+     * @param packetIndex номер составной части
+     * @param totalPackets число составных частей
+     * @param data все сообщение от position до limit, его позиция и предел не меняются
+     * @param fragmentSize размер кусков, на которые разбито сообщение
+     */
+    public static void write(ByteBuffer target, byte flags, long requestId, int packetIndex, int totalPackets,
+                             ByteBuffer data, int fragmentSize) {
+        int position = data.position();
+        int limit = data.limit();
+        int offset = packetIndex * fragmentSize;
+        int length = Math.min(fragmentSize, limit - position - offset);
+        data.limit(position + offset + length).position(position + offset);
+        CRC32C crc = CHECKSUM.get();
+        crc.reset();
+        crc.update(data);
+        data.position(position + offset);
+
+        target.clear();
+        target.putShort(MAGIC)
+                .put(VERSION)
+                .put(TYPE_DATA)
+                .put(flags)
+                .putLong(requestId)
+                .putInt(packetIndex)
+                .putInt(totalPackets)
+                .putInt(limit - position)
+                .putInt(offset)
+                .putInt(length)
+                .putInt((int) crc.getValue())
+                .put(data);
+        target.flip();
+        data.limit(limit).position(position);
+    }
+
+    /**
+     * Записывает в буфер служебный пакет.
+     * @param target буфер отправки
+     * @param type TYPE_ACK или TYPE_NACK
+     * @param requestId номер сообщения, к которому относится пакет
+     * @param totalPackets число составных частей этого сообщения
+     * @param indices номера недостающих кусков для NACK
+     * @param count сколько номеров из indices записать
+     */
+    public static void writeControl(ByteBuffer target, byte type, long requestId, int totalPackets,
+                                    int[] indices, int count) {
+        target.clear();
+        target.position(HEADER_SIZE);
+        for (int i = 0; i < count; i++) {
+            target.putInt(indices[i]);
+        }
+        writeHeader(target, type, requestId, totalPackets);
+    }
+
+    /**
+     * Записывает в буфер пробный пакет: заголовок и нули до нужного размера.
+     * @param target буфер отправки вместимостью не меньше HEADER_SIZE + payloadSize
+     * @param type TYPE_PROBE или TYPE_PROBE_ACK
+     * @param requestId номер пробы
+     * @param payloadSize размер нагрузки пакета
+     */
+    public static void writeProbe(ByteBuffer target, byte type, long requestId, int payloadSize) {
+        target.clear();
+        target.position(HEADER_SIZE);
+        while (target.position() < HEADER_SIZE + payloadSize) {
+            target.put((byte) 0);
+        }
+        writeHeader(target, type, requestId, 1);
+    }
+
+    /**
+     * Дописывает заголовок служебного пакета, нагрузка которого уже записана после места под заголовок.
+     */
+    private static void writeHeader(ByteBuffer target, byte type, long requestId, int totalPackets) {
+        int length = target.position() - HEADER_SIZE;
+        target.flip().position(HEADER_SIZE);
+        CRC32C crc = CHECKSUM.get();
+        crc.reset();
+        crc.update(target);
+
+        target.clear();
+        target.putShort(MAGIC)
+                .put(VERSION)
+                .put(type)
+                .put((byte) 0)
+                .putLong(requestId)
+                .putInt(0)
+                .putInt(totalPackets)
+                .putInt(length)
+                .putInt(0)
+                .putInt(length)
+                .putInt((int) crc.getValue());
+        target.position(HEADER_SIZE + length);
+        target.flip();
+    }
+
+    /**
+     * @return требует ли отправитель подтверждения сообщения
+     */
+    public boolean isReliable() {
+        return (flags & FLAG_RELIABLE) != 0;
+    }
+
+    /**
+     * @return сжато ли сообщение, к которому относится пакет
+     */
+    public boolean isCompressed() {
+        return (flags & FLAG_COMPRESSED) != 0;
+    }
+
+    /**
+     * @return можно ли отправлять отправителю пакета сжатые сообщения
+     */
+    public boolean acceptsDeflate() {
+        return (flags & FLAG_ACCEPTS_DEFLATE) != 0;
+    }
+
+    /**
+     * Читает пакет из принятой датаграммы. Кусок сообщения не копируется:
+     * пакет ссылается на source, позиция которого после вызова указывает на начало куска.
+     * @param source буфер с одной датаграммой, подготовленный к чтению
+     * @return прочитанный пакет, действителен, пока source не переиспользован
+     * @throws SerializeException если заголовок поврежден или не совпала контрольная сумма
+     */
+    public static NetworkPacket read(ByteBuffer source) {
+        if (source.remaining() < HEADER_SIZE) {
+            throw new SerializeException("Датаграмма короче заголовка: " + source.remaining() + " байт");
+        }
+        if (source.getShort() != MAGIC) {
+            throw new SerializeException("Неизвестный формат датаграммы");
+        }
+        byte version = source.get();
+        if (version != VERSION) {
+            throw new SerializeException("Неподдерживаемая версия пакета: " + version);
+        }
+        byte type = source.get();
+        if (type < TYPE_DATA || type > TYPE_PROBE_ACK) {
+            throw new SerializeException("Неизвестный тип пакета: " + type);
+        }
+        byte flags = source.get();
+        long requestId = source.getLong();
+        int packetIndex = source.getInt();
+        int totalPackets = source.getInt();
+        int messageLength = source.getInt();
+        int offset = source.getInt();
+        int length = source.getInt();
+        int checksum = source.getInt();
+        if (totalPackets <= 0 || packetIndex < 0 || packetIndex >= totalPackets) {
+            throw new SerializeException("Некорректный номер пакета " + packetIndex + " из " + totalPackets);
+        }
+        if (length < 0 || length != source.remaining()) {
+            throw new SerializeException("Длина пакета " + length + " не совпадает с датаграммой");
+        }
+        if (offset < 0 || (long) offset + length > messageLength
+                || (totalPackets == 1 && (offset != 0 || length != messageLength))) {
+            throw new SerializeException("Кусок " + offset + "+" + length + " выходит за сообщение длиной " + messageLength);
+        }
+
+        int payloadStart = source.position();
+        CRC32C crc = CHECKSUM.get();
+        crc.reset();
+        crc.update(source);
+        source.position(payloadStart);
+        if ((int) crc.getValue() != checksum) {
+            throw new SerializeException("Не совпала контрольная сумма пакета " + requestId + ":" + packetIndex);
+        }
+        return new NetworkPacket(type, flags, requestId, totalPackets, packetIndex, messageLength, offset, source);
+    }
 }
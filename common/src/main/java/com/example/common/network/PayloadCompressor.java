@@ -0,0 +1,183 @@
+package com.example.common.network;
+
+import com.example.common.network.serializer.SerializeException;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Сжатие сообщений алгоритмом Deflate.
+ * Сжатое сообщение - это длина исходного сообщения (4 байта) и поток zlib.
+ * Сжимаются только сообщения не меньше порога и только если это действительно уменьшает их размер.
+ * Deflater, Inflater и выходные буферы свои у каждого потока и переиспользуются.
+ */
+public class PayloadCompressor {
+    /**
+     * Больше этого размера распакованное сообщение не принимается, чтобы маленький пакет не раздул память.
+     */
+    public static final int MAX_INFLATED_SIZE = 64 << 20;
+    /**
+     * Во сколько раз сообщение может быть больше сжатого: заявленная длина сверх этого считается подделкой.
+     */
+    public static final int MAX_COMPRESSION_RATIO = 256;
+    /**
+     * С какого размера начинается буфер распаковки, если заявленная длина больше.
+     */
+    private static final int MIN_INFLATE_BUFFER = 8 << 10;
+    private static final int MAX_RETAINED = 1 << 20;
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+    private static final ThreadLocal<ByteBuffer[]> INFLATED = ThreadLocal.withInitial(() -> new ByteBuffer[1]);
+
+    private final int threshold;
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<ByteBuffer[]> deflated = ThreadLocal.withInitial(() -> new ByteBuffer[1]);
+    private final LongAdder messagesCompressed = new LongAdder();
+    private final LongAdder messagesIncompressible = new LongAdder();
+    private final LongAdder bytesBefore = new LongAdder();
+    private final LongAdder bytesAfter = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+
+    /**
+     * @param threshold минимальный размер сообщения в байтах, которое имеет смысл сжимать
+     * @param level уровень сжатия Deflater, от 1 (быстро) до 9 (плотно)
+     */
+    public PayloadCompressor(int threshold, int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Уровень сжатия должен быть от 1 до 9: " + level);
+        }
+        this.threshold = threshold;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+    }
+
+    /**
+     * Сжимает сообщение.
+     * @param message байты сообщения от position до limit, позиция не меняется
+     * @return сжатое сообщение в буфере потока, действительном до следующего вызова compress,
+     * или null, если сообщение меньше порога или не сжимается
+     */
+    public ByteBuffer compress(ByteBuffer message) {
+        int length = message.remaining();
+        if (length < threshold) {
+            return null;
+        }
+        long started = System.nanoTime();
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(message.duplicate());
+        deflater.finish();
+
+        // Результат не длиннее исходного, иначе сжимать бессмысленно
+        ByteBuffer out = buffer(deflated, length);
+        out.limit(length);
+        out.putInt(length);
+        while (!deflater.finished() && out.hasRemaining()) {
+            deflater.deflate(out);
+        }
+        boolean compressed = deflater.finished();
+        compressNanos.add(System.nanoTime() - started);
+        if (!compressed) {
+            messagesIncompressible.increment();
+            return null;
+        }
+        out.flip();
+        messagesCompressed.increment();
+        bytesBefore.add(length);
+        bytesAfter.add(out.remaining());
+        return out;
+    }
+
+    /**
+     * Распаковывает сообщение, сжатое compress.
+     * Буфер растет по мере распаковки, а не выделяется сразу под заявленную длину,
+     * поэтому память тратится только на реально распакованные данные.
+     * @param compressed сжатое сообщение от position до limit
+     * @return исходное сообщение в буфере потока, действительном до следующего вызова inflate
+     * @throws SerializeException если сжатые данные повреждены или заявлено слишком сильное сжатие
+     */
+    public static ByteBuffer inflate(ByteBuffer compressed) {
+        if (compressed.remaining() < Integer.BYTES) {
+            throw new SerializeException("Сжатое сообщение обрезано");
+        }
+        int length = compressed.getInt();
+        if (length < 0 || length > MAX_INFLATED_SIZE || length > (long) compressed.remaining() * MAX_COMPRESSION_RATIO) {
+            throw new SerializeException("Недопустимый размер распакованного сообщения: " + length);
+        }
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(compressed);
+
+        ByteBuffer out = buffer(INFLATED, (int) Math.min(length, Math.max(MIN_INFLATE_BUFFER, (long) compressed.remaining() * 4)));
+        out.limit(Math.min(length, out.capacity()));
+        try {
+            while (!inflater.finished()) {
+                if (!out.hasRemaining() && out.limit() < length) {
+                    out = grow(out, length);
+                }
+                if (inflater.inflate(out) == 0 && !inflater.finished()
+                        && (inflater.needsInput() || inflater.needsDictionary() || !out.hasRemaining())) {
+                    throw new SerializeException("Сжатое сообщение повреждено");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new SerializeException("Сжатое сообщение повреждено: " + e.getMessage());
+        }
+        if (out.position() != length) {
+            throw new SerializeException("Распакованное сообщение короче заявленного");
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * @return очищенный буфер потока вместимостью не меньше size
+     */
+    private static ByteBuffer buffer(ThreadLocal<ByteBuffer[]> holder, int size) {
+        ByteBuffer[] slot = holder.get();
+        ByteBuffer buffer = slot[0];
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(size, buffer == null ? 0 : buffer.capacity() * 2));
+            slot[0] = buffer.capacity() <= MAX_RETAINED ? buffer : null;
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Вдвое увеличивает буфер распаковки, но не больше length, сохраняя распакованное.
+     */
+    private static ByteBuffer grow(ByteBuffer out, int length) {
+        int capacity = (int) Math.min(length, (long) out.capacity() * 2);
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        grown.put(out.flip());
+        if (capacity <= MAX_RETAINED) {
+            INFLATED.get()[0] = grown;
+        }
+        return grown;
+    }
+
+    public long getMessagesCompressed() {
+        return messagesCompressed.sum();
+    }
+
+    public long getMessagesIncompressible() {
+        return messagesIncompressible.sum();
+    }
+
+    public long getBytesBefore() {
+        return bytesBefore.sum();
+    }
+
+    public long getBytesAfter() {
+        return bytesAfter.sum();
+    }
+
+    /**
+     * @return процессорное время, потраченное на сжатие, включая неудачные попытки
+     */
+    public long getCompressNanos() {
+        return compressNanos.sum();
+    }
+}
@@ -0,0 +1,294 @@
+package com.example.common.network;
+
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Окно неподтвержденных сообщений отправителя для надежной доставки.
+ * Хранит копии отправленных сообщений до ACK, чтобы по NACK повторять только недостающие куски.
+ * Копии лежат в direct-буферах из пулов по степеням двойки, которые возвращаются в пул после ACK
+ * или отказа от сообщения, так что в установившемся режиме надежная отправка ничего не выделяет.
+ * Если ACK не пришел за таймаут, сообщение считается просроченным и отдается на повтор;
+ * таймаут удваивается с каждой попыткой, после maxRetransmits попыток сообщение бросается.
+ * Сообщения упорядочены по сроку повтора, поэтому due просматривает только просроченные.
+ * Окно ограничено. По умолчанию при переполнении бросается самое старое сообщение,
+ * чтобы медленный получатель не останавливал отправку остальным; так работает сервер.
+ * Окно с блокировкой вместо этого задерживает отправку нового сообщения, пока не освободится место:
+ * так работает клиент, у которого все сообщения идут одному серверу и ни одно нельзя бросать молча.
+ */
+public class SendWindow {
+    private static final int MAX_BACKOFF_SHIFT = 10;
+    /**
+     * Размеры буферов для копий: от 1 КБ до 256 КБ. Более длинные сообщения копируются в новый буфер.
+     */
+    private static final int MIN_STORAGE_SHIFT = 10;
+    private static final int MAX_STORAGE_SHIFT = 18;
+    private static final int MAX_POOLED_PER_SIZE = 8;
+
+    /**
+     * Сообщения по ключу в порядке отправки: самое старое вытесняется при переполнении.
+     */
+    private final LinkedHashMap<MessageKey, Outstanding> outstanding = new LinkedHashMap<>();
+    /**
+     * Те же сообщения по сроку повтора, при равных сроках - в порядке отправки.
+     */
+    private final TreeSet<Outstanding> byDeadline = new TreeSet<>(
+            Comparator.<Outstanding>comparingLong(message -> message.deadlineNanos).thenComparingLong(message -> message.sequence));
+    private final BufferPool[] storagePools = new BufferPool[MAX_STORAGE_SHIFT - MIN_STORAGE_SHIFT + 1];
+    private long nextSequence;
+    private final int capacity;
+    private final long retransmitTimeoutNanos;
+    private final int maxRetransmits;
+    private final boolean blockWhenFull;
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    /**
+     * @param capacity сколько сообщений может ждать подтверждения одновременно
+     * @param retransmitTimeout через сколько без ACK повторять сообщение в первый раз
+     * @param maxRetransmits сколько раз повторять сообщение по таймауту, прежде чем бросить
+     * @param unit единица измерения retransmitTimeout
+     */
+    public SendWindow(int capacity, long retransmitTimeout, int maxRetransmits, TimeUnit unit) {
+        this(capacity, retransmitTimeout, maxRetransmits, unit, false);
+    }
+
+    /**
+     * @param capacity сколько сообщений может ждать подтверждения одновременно
+     * @param retransmitTimeout через сколько без ACK повторять сообщение в первый раз
+     * @param maxRetransmits сколько раз повторять сообщение по таймауту, прежде чем бросить
+     * @param unit единица измерения retransmitTimeout
+     * @param blockWhenFull ждать места в заполненном окне вместо того, чтобы бросать самое старое сообщение
+     */
+    public SendWindow(int capacity, long retransmitTimeout, int maxRetransmits, TimeUnit unit, boolean blockWhenFull) {
+        if (capacity <= 0 || retransmitTimeout <= 0 || maxRetransmits < 0) {
+            throw new IllegalArgumentException("Некорректные параметры окна отправки");
+        }
+        this.capacity = capacity;
+        this.retransmitTimeoutNanos = unit.toNanos(retransmitTimeout);
+        this.maxRetransmits = maxRetransmits;
+        this.blockWhenFull = blockWhenFull;
+        for (int i = 0; i < storagePools.length; i++) {
+            storagePools[i] = new BufferPool(1 << (MIN_STORAGE_SHIFT + i), Math.min(capacity, MAX_POOLED_PER_SIZE));
+        }
+    }
+
+    /**
+     * Запоминает сообщение до подтверждения.
+     * @param target получатель
+     * @param requestId номер сообщения
+     * @param message байты сообщения от position до limit, копируются в буфер окна
+     * @param totalPackets на сколько кусков разбито сообщение
+     * @param fragmentSize размер кусков, повторять их нужно тем же размером
+     * @param flags флаги, с которыми отправлены куски сообщения
+     * @throws InterruptedIOException если поток прерван, пока окно с блокировкой заполнено
+     */
+    public synchronized void track(InetSocketAddress target, long requestId, ByteBuffer message, int totalPackets,
+                                   int fragmentSize, byte flags) throws InterruptedIOException {
+        // Место освобождают ACK и брошенные после всех повторов сообщения, поэтому ожидание конечно
+        while (blockWhenFull && outstanding.size() >= capacity) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Ожидание места в окне отправки прервано");
+            }
+        }
+        ByteBuffer storage = acquireStorage(message.remaining());
+        storage.put(message.duplicate()).flip();
+        Outstanding tracked = new Outstanding(target, requestId, storage, totalPackets, fragmentSize, flags,
+                System.nanoTime() + retransmitTimeoutNanos, nextSequence++);
+        Outstanding replaced = outstanding.put(new MessageKey(target, requestId), tracked);
+        if (replaced != null) {
+            drop(replaced);
+        }
+        byDeadline.add(tracked);
+        if (outstanding.size() > capacity) {
+            Iterator<Outstanding> eldest = outstanding.values().iterator();
+            Outstanding evicted = eldest.next();
+            eldest.remove();
+            drop(evicted);
+            abandoned.increment();
+        }
+    }
+
+    /**
+     * Снимает сообщение с ожидания после ACK.
+     */
+    public synchronized void acknowledge(InetSocketAddress target, long requestId) {
+        Outstanding message = outstanding.remove(new MessageKey(target, requestId));
+        if (message != null) {
+            drop(message);
+            acknowledged.increment();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Находит сообщение для повтора кусков по NACK и откладывает его таймаут.
+     * Буфер сообщения не вернется в пул, пока вызывающий не отдаст его через release.
+     * @return сообщение или null, если оно уже подтверждено или брошено
+     */
+    public synchronized Outstanding get(InetSocketAddress target, long requestId) {
+        Outstanding message = outstanding.get(new MessageKey(target, requestId));
+        if (message != null) {
+            reschedule(message, System.nanoTime() + backoff(message.retransmits));
+            message.references++;
+        }
+        return message;
+    }
+
+    /**
+     * Выбирает сообщения, ACK которых не пришел вовремя, и назначает им следующий таймаут.
+     * Сообщения, исчерпавшие попытки, удаляются. Каждое выбранное сообщение нужно отдать через release.
+     * @return сообщения для повтора
+     */
+    public synchronized List<Outstanding> due() {
+        long now = System.nanoTime();
+        List<Outstanding> due = new ArrayList<>();
+        while (!byDeadline.isEmpty() && now - byDeadline.first().deadlineNanos >= 0) {
+            Outstanding message = byDeadline.pollFirst();
+            if (message.retransmits >= maxRetransmits) {
+                outstanding.remove(new MessageKey(message.target, message.requestId));
+                drop(message);
+                abandoned.increment();
+                notifyAll();
+                continue;
+            }
+            message.retransmits++;
+            message.deadlineNanos = now + backoff(message.retransmits);
+            byDeadline.add(message);
+            message.references++;
+            due.add(message);
+        }
+        return due;
+    }
+
+    /**
+     * Отдает сообщение, полученное из get или due, после повтора его кусков.
+     */
+    public synchronized void release(Outstanding message) {
+        if (--message.references == 0) {
+            storagePool(message.storage.capacity()).release(message.storage);
+        }
+    }
+
+    /**
+     * Убирает удаленное из outstanding сообщение из расписания и снимает ссылку окна:
+     * буфер вернется в пул, когда его отпустят и потоки, которые сейчас повторяют куски.
+     */
+    private void drop(Outstanding message) {
+        byDeadline.remove(message);
+        release(message);
+    }
+
+    private void reschedule(Outstanding message, long deadlineNanos) {
+        byDeadline.remove(message);
+        message.deadlineNanos = deadlineNanos;
+        byDeadline.add(message);
+    }
+
+    private ByteBuffer acquireStorage(int length) {
+        if (length > 1 << MAX_STORAGE_SHIFT) {
+            return ByteBuffer.allocate(length);
+        }
+        ByteBuffer storage = storagePool(length).acquire();
+        storage.limit(length);
+        return storage;
+    }
+
+    /**
+     * @return пул наименьших буферов, в которые помещается length байт; для длинных сообщений - самый крупный,
+     * он не примет чужой буфер обратно
+     */
+    private BufferPool storagePool(int length) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(1, length) - 1);
+        return storagePools[Math.min(Math.max(shift, MIN_STORAGE_SHIFT), MAX_STORAGE_SHIFT) - MIN_STORAGE_SHIFT];
+    }
+
+    private long backoff(int retransmits) {
+        return retransmitTimeoutNanos << Math.min(retransmits, MAX_BACKOFF_SHIFT);
+    }
+
+    public long getAcknowledged() {
+        return acknowledged.sum();
+    }
+
+    public long getAbandoned() {
+        return abandoned.sum();
+    }
+
+    public synchronized int getOutstanding() {
+        return outstanding.size();
+    }
+
+    private record MessageKey(InetSocketAddress target, long requestId) {
+    }
+
+    /**
+     * Неподтвержденное сообщение.
+     */
+    public static final class Outstanding {
+        private final InetSocketAddress target;
+        private final long requestId;
+        private final ByteBuffer storage;
+        private final int totalPackets;
+        private final int fragmentSize;
+        private final byte flags;
+        private final long sequence;
+        private long deadlineNanos;
+        private int retransmits;
+        /**
+         * Ссылка окна плюс по одной на каждый незавершенный повтор; при нуле буфер возвращается в пул.
+         */
+        private int references = 1;
+
+        private Outstanding(InetSocketAddress target, long requestId, ByteBuffer storage, int totalPackets, int fragmentSize,
+                            byte flags, long deadlineNanos, long sequence) {
+            this.target = target;
+            this.requestId = requestId;
+            this.storage = storage;
+            this.totalPackets = totalPackets;
+            this.fragmentSize = fragmentSize;
+            this.flags = flags;
+            this.deadlineNanos = deadlineNanos;
+            this.sequence = sequence;
+        }
+
+        public InetSocketAddress target() {
+            return target;
+        }
+
+        public long requestId() {
+            return requestId;
+        }
+
+        /**
+         * @return байты сообщения в собственном буфере, так как повторять его могут несколько потоков сразу
+         */
+        public ByteBuffer message() {
+            return storage.duplicate();
+        }
+
+        public int totalPackets() {
+            return totalPackets;
+        }
+
+        public int fragmentSize() {
+            return fragmentSize;
+        }
+
+        public byte flags() {
+            return flags;
+        }
+    }
+}
@@ -1,52 +1,278 @@
 package com.example.common.network;
 
-import com.example.common.network.serializer.NetworkSerializer;
+import com.example.common.network.serializer.CodecType;
+import com.example.common.network.serializer.MessageCodec;
+import com.example.common.network.serializer.SerializeException;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketOption;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 /**
  * Класс-обертка для управления операциями отправки и получения данных.
+ * Надежная доставка исходящих сообщений включается окном отправки: такие сообщения
+ * помечаются флагом, получатель подтверждает их ACK, а недостающие куски запрашивает NACK,
+ * и повторяются только они. Входящие надежные сообщения подтверждаются всегда.
+ * Таймеры надежной доставки обслуживает tick, который нужно вызывать периодически.
+ * Если включено сжатие, все исходящие пакеты сообщают получателю, что отправитель понимает Deflate,
+ * а крупные сообщения сжимаются для тех адресатов, от которых пришел такой же признак.
+ * Сообщения режутся на куски размера fragmentSize, по умолчанию таком, что датаграмма проходит
+ * канал с MTU 1500 без IP-фрагментации: потеря одного IP-фрагмента теряет всю датаграмму,
+ * а потерянный кусок надежная доставка повторит отдельно. Если включено зондирование MTU,
+ * для каждого адресата пробными пакетами с запретом фрагментации ищется наибольший размер датаграммы,
+ * все пробы которого и всех меньших размеров доходят без потерь, и сообщения ему режутся на куски этого размера.
  */
 @Log4j2
 public class UDPManager {
+    private static final int MAX_DEFLATE_PEERS = 10_000;
+    /**
+     * Пробуемые размеры датаграмм по возрастанию: MTU Ethernet 1500 и jumbo-кадров 9000 без заголовков IP и UDP.
+     * Больших размеров не бывает ни у одного реального канала: такая датаграмма дошла бы только IP-фрагментами.
+     */
+    static final int[] PROBE_DATAGRAM_SIZES = {NetworkPacket.MTU_SAFE_DATAGRAM_SIZE, 9000 - 20 - 8};
+    /**
+     * Имя опции запрета IP-фрагментации, которая есть в jdk.net начиная с JDK 19.
+     */
+    private static final String DONT_FRAGMENT_OPTION = "IP_DONTFRAGMENT";
+    /**
+     * Сколько проб каждого размера отправляется; размер принимается, только если дошли все.
+     */
+    private static final int PROBE_COPIES = 3;
+    private static final long PROBE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(5);
+    /**
+     * Сколько раз повторить отправку, если буфер сокета переполнен, и пауза между попытками.
+     */
+    private static final int SEND_ATTEMPTS = 16;
+    private static final long SEND_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int MAX_PATHS = 10_000;
 
-    private final NetworkSerializer serializer;
+    /**
+     * Кодек, которым кодируются отправляемые сообщения.
+     * Входящие сообщения декодируются кодеком, определенным по их первому байту.
+     */
+    @Setter
+    private MessageCodec codec = CodecType.BINARY.codec();
+    @Getter
     private final NetworkObjectBuilder builder;
     @Getter
     private final DatagramChannel channel;
     private final InetSocketAddress serverAddress;
-    private final ByteBuffer buffer = ByteBuffer.allocate(65507); // Максимальный размер UDP-пакета
+    /**
+     * Пул direct-буферов, общий со сборщиком. Отправка берет из него буфер на время сообщения.
+     */
+    private final BufferPool bufferPool;
+    /**
+     * Буфер приема. Читает из канала один поток, поэтому буфер один на весь менеджер.
+     */
+    private final ByteBuffer buffer;
+    private final LongAdder datagramsReceived = new LongAdder();
+    private final LongAdder datagramsSent = new LongAdder();
+    private final LongAdder datagramsDropped = new LongAdder();
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder fragmentsRetransmitted = new LongAdder();
+    private final LongAdder acksSent = new LongAdder();
+    private final LongAdder nacksSent = new LongAdder();
+    private final LongAdder nacksReceived = new LongAdder();
+    private final LongAdder probesSent = new LongAdder();
+    /**
+     * Размер куска сообщения, если для адресата не найден больший зондированием.
+     */
+    @Getter
+    private volatile int fragmentSize = NetworkPacket.MTU_SAFE_PAYLOAD_SIZE;
+    private volatile boolean mtuProbing;
+    /**
+     * Окно неподтвержденных сообщений или null, если надежная доставка исходящих выключена.
+     */
+    @Getter
+    private volatile SendWindow sendWindow;
+    /**
+     * Сжатие исходящих сообщений или null, если оно выключено.
+     */
+    @Getter
+    private volatile PayloadCompressor compressor;
+    /**
+     * Адресаты, которые понимают сжатые сообщения, в порядке последнего обращения.
+     */
+    private final Map<InetSocketAddress, Boolean> deflatePeers = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<InetSocketAddress, Boolean> eldest) {
+            return size() > MAX_DEFLATE_PEERS;
+        }
+    };
+    /**
+     * Результаты зондирования MTU по адресатам, в порядке последнего обращения.
+     */
+    private final Map<InetSocketAddress, Path> paths = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<InetSocketAddress, Path> eldest) {
+            return size() > MAX_PATHS;
+        }
+    };
 
     /**
      * Конструктор для использования на сервере.
      * @param channel DatagramChannel, уже связанный с портом
-     * @param serializer экземпляр NetworkSerializer
      * @param builder экземпляр NetworkObjectBuilder
      */
-    public UDPManager(DatagramChannel channel, NetworkSerializer serializer, NetworkObjectBuilder builder) {
+    public UDPManager(DatagramChannel channel, NetworkObjectBuilder builder) {
         this.channel = channel;
-        this.serializer = serializer;
         this.builder = builder;
         this.serverAddress = null; // Не используется на сервере
+        this.bufferPool = builder.getBufferPool();
+        this.buffer = bufferPool.acquire();
+        builder.setFeedback(new ControlSender());
     }
 
     /**
      * Конструктор для использования на клиенте.
      * @param channel DatagramChannel, уже связанный с портом
-     * @param serializer экземпляр NetworkSerializer
      * @param builder экземпляр NetworkObjectBuilder
      * @param serverAddress адрес и порт сервера
      */
-    public UDPManager(DatagramChannel channel, NetworkSerializer serializer, NetworkObjectBuilder builder, InetSocketAddress serverAddress) {
+    public UDPManager(DatagramChannel channel, NetworkObjectBuilder builder, InetSocketAddress serverAddress) {
         this.channel = channel;
-        this.serializer = serializer;
         this.builder = builder;
         this.serverAddress = serverAddress;
+        this.bufferPool = builder.getBufferPool();
+        this.buffer = bufferPool.acquire();
+        builder.setFeedback(new ControlSender());
+    }
+
+    /**
+     * Включает надежную доставку исходящих сообщений.
+     * @param sendWindow окно, в котором сообщения ждут подтверждения
+     */
+    public void enableReliableDelivery(SendWindow sendWindow) {
+        this.sendWindow = sendWindow;
+    }
+
+    /**
+     * Включает сжатие исходящих сообщений для адресатов, которые его поддерживают,
+     * и прием сжатых сообщений.
+     * @param compressor настроенный компрессор
+     */
+    public void enableCompression(PayloadCompressor compressor) {
+        this.compressor = compressor;
+        builder.setAcceptCompressed(true);
+    }
+
+    /**
+     * Задает размер куска сообщения в одной датаграмме.
+     * @param fragmentSize размер от NetworkPacket.MIN_PAYLOAD_SIZE до NetworkPacket.MAX_PAYLOAD_SIZE
+     */
+    public void setFragmentSize(int fragmentSize) {
+        if (fragmentSize < NetworkPacket.MIN_PAYLOAD_SIZE || fragmentSize > NetworkPacket.MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Размер куска должен быть от " + NetworkPacket.MIN_PAYLOAD_SIZE
+                    + " до " + NetworkPacket.MAX_PAYLOAD_SIZE + ": " + fragmentSize);
+        }
+        this.fragmentSize = fragmentSize;
+    }
+
+    /**
+     * Включает зондирование MTU: перед первым сообщением адресату и затем раз в PROBE_INTERVAL
+     * ему отправляются пробы всех размеров, и куски увеличиваются до наибольшего подтвержденного.
+     * Размер куска, заданный setFragmentSize, остается нижней границей.
+     * Пробы имеют смысл только с запретом IP-фрагментации, иначе крупная проба дойдет фрагментами,
+     * поэтому на JDK без опции IP_DONTFRAGMENT зондирование не включается.
+     * @return true, если зондирование включено
+     */
+    @SuppressWarnings("unchecked")
+    public boolean enableMtuProbing() {
+        for (SocketOption<?> option : channel.supportedOptions()) {
+            if (option.name().equals(DONT_FRAGMENT_OPTION) && option.type() == Boolean.class) {
+                try {
+                    channel.setOption((SocketOption<Boolean>) option, true);
+                    this.mtuProbing = true;
+                    return true;
+                } catch (IOException e) {
+                    log.warn("Не удалось запретить IP-фрагментацию: {}", e.getMessage());
+                    return false;
+                }
+            }
+        }
+        log.warn("Зондирование MTU не включено: JDK не поддерживает {}", DONT_FRAGMENT_OPTION);
+        return false;
+    }
+
+    /**
+     * @return размер кусков для сообщения адресату
+     */
+    private int fragmentSizeFor(InetSocketAddress target) {
+        int size = fragmentSize;
+        if (!mtuProbing) {
+            return size;
+        }
+        long now = System.nanoTime();
+        Path path;
+        long round = -1;
+        synchronized (paths) {
+            path = paths.get(target);
+            if (path == null) {
+                path = new Path();
+                paths.put(target, path);
+            }
+            if (path.round == 0 || now - path.probedNanos >= PROBE_INTERVAL_NANOS) {
+                round = path.startRound(now);
+            }
+        }
+        if (round >= 0) {
+            sendProbes(target, round);
+        }
+        return Math.max(size, path.fragmentSize);
+    }
+
+    private void sendProbes(InetSocketAddress target, long round) {
+        ByteBuffer packetBuffer = bufferPool.acquire();
+        try {
+            for (int i = 0; i < PROBE_DATAGRAM_SIZES.length; i++) {
+                for (int copy = 0; copy < PROBE_COPIES; copy++) {
+                    NetworkPacket.writeProbe(packetBuffer, NetworkPacket.TYPE_PROBE, round << 8 | i,
+                            PROBE_DATAGRAM_SIZES[i] - NetworkPacket.HEADER_SIZE);
+                    transmit(packetBuffer, target);
+                    probesSent.increment();
+                }
+            }
+        } catch (IOException e) {
+            // Датаграмма больше допустимого для интерфейса: остальные еще больше
+            log.debug("Зондирование {} остановлено: {}", target, e.getMessage());
+        } finally {
+            bufferPool.release(packetBuffer);
+        }
+    }
+
+    private void probeAcknowledged(NetworkPacket ack, InetSocketAddress sender) {
+        Path path;
+        synchronized (paths) {
+            path = paths.get(sender);
+        }
+        if (path != null) {
+            path.acknowledge(ack.requestId());
+        }
+    }
+
+    private boolean acceptsDeflate(InetSocketAddress target) {
+        synchronized (deflatePeers) {
+            return deflatePeers.get(target) != null;
+        }
+    }
+
+    private void rememberDeflatePeer(InetSocketAddress sender) {
+        synchronized (deflatePeers) {
+            deflatePeers.put(sender, Boolean.TRUE);
+        }
     }
 
     /**
@@ -56,31 +282,136 @@ public class UDPManager {
      * @param targetAddress адрес получателя
      */
     public void send(NetworkObject data, InetSocketAddress targetAddress) throws IOException {
+        ByteBuffer packetBuffer = bufferPool.acquire();
         try {
-            byte[] objectBytes = serializer.serialize(data);
+            ByteBuffer objectBytes = codec.encode(data);
             long requestId = data.id();
-            int packetSize = 65507 - 20; // Макс. размер пакета минус примерный размер заголовка
-            int totalPackets = (int) Math.ceil((double) objectBytes.length / packetSize);
+            byte flags = 0;
+            PayloadCompressor payloadCompressor = compressor;
+            if (payloadCompressor != null) {
+                flags |= NetworkPacket.FLAG_ACCEPTS_DEFLATE;
+                ByteBuffer compressed = acceptsDeflate(targetAddress) ? payloadCompressor.compress(objectBytes) : null;
+                if (compressed != null) {
+                    objectBytes = compressed;
+                    flags |= NetworkPacket.FLAG_COMPRESSED;
+                }
+            }
+            int packetSize = fragmentSizeFor(targetAddress);
+            int messageLength = objectBytes.remaining();
+            int totalPackets = Math.max(1, (messageLength + packetSize - 1) / packetSize);
+            SendWindow window = sendWindow;
+            if (window != null) {
+                flags |= NetworkPacket.FLAG_RELIABLE;
+                window.track(targetAddress, requestId, objectBytes, totalPackets, packetSize, flags);
+            }
 
             for (int i = 0; i < totalPackets; i++) {
-                int offset = i * packetSize;
-                int length = Math.min(packetSize, objectBytes.length - offset);
-                byte[] partData = new byte[length];
-                System.arraycopy(objectBytes, offset, partData, 0, length);
-
-                NetworkPacket packet = new NetworkPacket(requestId, totalPackets, i, partData);
-                byte[] packetBytes = serializer.serialize(packet);
-
-                ByteBuffer packetBuffer = ByteBuffer.wrap(packetBytes);
-                channel.send(packetBuffer, targetAddress);
+                sendFragment(packetBuffer, flags, requestId, i, totalPackets, objectBytes, packetSize, targetAddress);
             }
-            log.info("Сообщение {} успешно отправлено, разбито на {} пакетов.", requestId, totalPackets);
+            messagesSent.increment();
+            log.debug("Сообщение {} успешно отправлено, разбито на {} пакетов.", requestId, totalPackets);
         } catch (IOException e) {
             log.error("Ошибка при отправке данных: {}", e.getMessage());
             throw e;
+        } finally {
+            bufferPool.release(packetBuffer);
         }
     }
 
+    /**
+     * Отправляет один кусок сообщения.
+     * @param objectBytes все сообщение от position до limit
+     * @param packetSize размер кусков, на которые разбито сообщение
+     */
+    private void sendFragment(ByteBuffer packetBuffer, byte flags, long requestId, int index, int totalPackets,
+                              ByteBuffer objectBytes, int packetSize, InetSocketAddress targetAddress) throws IOException {
+        NetworkPacket.write(packetBuffer, flags, requestId, index, totalPackets, objectBytes, packetSize);
+        transmit(packetBuffer, targetAddress);
+    }
+
+    /**
+     * Отправляет датаграмму. Неблокирующий канал возвращает 0, если буфер сокета переполнен:
+     * тогда отправка повторяется с короткими паузами, чтобы отправитель не обгонял сокет,
+     * а если место так и не освободилось, датаграмма считается потерянной. Потерю восстановит
+     * надежная доставка, если она включена.
+     * @param packetBuffer датаграмма, подготовленная к чтению
+     * @return true, если датаграмма отправлена
+     */
+    private boolean transmit(ByteBuffer packetBuffer, InetSocketAddress target) throws IOException {
+        for (int attempt = 0; attempt < SEND_ATTEMPTS; attempt++) {
+            if (channel.send(packetBuffer, target) > 0) {
+                datagramsSent.increment();
+                return true;
+            }
+            LockSupport.parkNanos(SEND_RETRY_NANOS);
+        }
+        datagramsDropped.increment();
+        log.debug("Буфер отправки переполнен, датаграмма для {} потеряна", target);
+        return false;
+    }
+
+    /**
+     * Обслуживает таймеры надежной доставки: запрашивает недостающие куски входящих сообщений,
+     * повторяет исходящие, подтверждение которых не пришло вовремя, и чистит просроченные сборки.
+     * Для неподтвержденного сообщения повторяется только последний кусок: получатель в ответ
+     * либо снова пришлет ACK, либо запросит NACK то, чего ему не хватает.
+     */
+    public void tick() {
+        builder.tick();
+        SendWindow window = sendWindow;
+        if (window == null) {
+            return;
+        }
+        List<SendWindow.Outstanding> due = window.due();
+        if (due.isEmpty()) {
+            return;
+        }
+        ByteBuffer packetBuffer = bufferPool.acquire();
+        try {
+            for (SendWindow.Outstanding message : due) {
+                ByteBuffer objectBytes = message.message();
+                sendFragment(packetBuffer, message.flags(), message.requestId(), message.totalPackets() - 1,
+                        message.totalPackets(), objectBytes, message.fragmentSize(), message.target());
+                fragmentsRetransmitted.increment();
+            }
+        } catch (IOException e) {
+            log.error("Ошибка повторной отправки: {}", e.getMessage());
+        } finally {
+            bufferPool.release(packetBuffer);
+            due.forEach(window::release);
+        }
+    }
+
+    /**
+     * Повторяет куски, перечисленные в NACK.
+     */
+    private void retransmit(NetworkPacket nack, InetSocketAddress target) throws IOException {
+        nacksReceived.increment();
+        SendWindow window = sendWindow;
+        SendWindow.Outstanding message = window == null ? null : window.get(target, nack.requestId());
+        if (message == null) {
+            return;
+        }
+        ByteBuffer indices = nack.payload();
+        ByteBuffer objectBytes = message.message();
+        ByteBuffer packetBuffer = bufferPool.acquire();
+        try {
+            while (indices.remaining() >= Integer.BYTES) {
+                int index = indices.getInt();
+                if (index < 0 || index >= message.totalPackets()) {
+                    continue;
+                }
+                sendFragment(packetBuffer, message.flags(), message.requestId(), index,
+                        message.totalPackets(), objectBytes, message.fragmentSize(), target);
+                fragmentsRetransmitted.increment();
+            }
+        } finally {
+            bufferPool.release(packetBuffer);
+            window.release(message);
+        }
+        log.debug("Сообщение {} для {}: повторены запрошенные пакеты", nack.requestId(), target);
+    }
+
     /**
      * Отправляет NetworkObject на адрес, указанный при создании клиента.
      * Этот метод предназначен только для использования на клиенте.
@@ -95,27 +426,215 @@ public class UDPManager {
 
     /**
      * Принимает пакеты и собирает из них NetworkObject.
-     * @return готовый NetworkObject+InetSocketAddress или null
+     * Битый пакет отбрасывается, как в drain, и не прерывает чтение следующих.
+     * @return готовый NetworkObject+InetSocketAddress, ReceiveObject без объекта или null
      */
     public ReceiveObject receive() throws IOException, ClassNotFoundException {
         buffer.clear();
         InetSocketAddress clientAddress = (InetSocketAddress) channel.receive(buffer);
 
         if (clientAddress != null) {
-            log.info("Пакет получен");
+            datagramsReceived.increment();
+            log.debug("Пакет получен");
             buffer.flip();
-            byte[] data = new byte[buffer.remaining()];
-            buffer.get(data);
-
             try {
-                NetworkPacket packet = serializer.deserialize(data);
-                log.info("Пакет передан сборщику объектов");
-                return new ReceiveObject(builder.build(packet), clientAddress);
-            } catch (IOException | ClassNotFoundException e) {
-                log.error("Ошибка десериализации пакета: {}", e.getMessage());
-                throw e;
+                return new ReceiveObject(assemble(clientAddress), clientAddress);
+            } catch (IOException | ClassNotFoundException | SerializeException | ClassCastException e) {
+                log.debug("Пакет от {} отброшен: {}", clientAddress, e.getMessage());
+                return new ReceiveObject(null, clientAddress);
             }
         }
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * Вычитывает из канала все датаграммы, готовые на момент вызова.
+     * Каждое полностью собранное сообщение передается в handler, незавершенные остаются в сборщике.
+     * Битый пакет отбрасывается и не прерывает чтение остальных.
+     * Канал должен быть неблокирующим, иначе вызов зависнет на последнем чтении.
+     * @param handler получатель собранных сообщений
+     * @return число прочитанных датаграмм
+     */
+    public int drain(Consumer<ReceiveObject> handler) throws IOException {
+        int count = 0;
+        while (true) {
+            buffer.clear();
+            InetSocketAddress clientAddress = (InetSocketAddress) channel.receive(buffer);
+            if (clientAddress == null) {
+                return count;
+            }
+            count++;
+            datagramsReceived.increment();
+            buffer.flip();
+            try {
+                NetworkObject object = assemble(clientAddress);
+                if (object != null) {
+                    handler.accept(new ReceiveObject(object, clientAddress));
+                }
+            } catch (IOException | ClassNotFoundException | SerializeException | ClassCastException e) {
+                log.debug("Пакет от {} отброшен: {}", clientAddress, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Читает пакет из буфера и передает его сборщику.
+     * @param sender адрес отправителя датаграммы
+     * @return собранный NetworkObject или null, если сообщение еще не пришло целиком
+     */
+    private NetworkObject assemble(InetSocketAddress sender) throws IOException, ClassNotFoundException {
+        try {
+            NetworkPacket packet = NetworkPacket.read(buffer);
+            switch (packet.type()) {
+                case NetworkPacket.TYPE_ACK -> {
+                    SendWindow window = sendWindow;
+                    if (window != null) {
+                        window.acknowledge(sender, packet.requestId());
+                    }
+                    return null;
+                }
+                case NetworkPacket.TYPE_NACK -> {
+                    retransmit(packet, sender);
+                    return null;
+                }
+                case NetworkPacket.TYPE_PROBE -> {
+                    answerProbe(packet, sender);
+                    return null;
+                }
+                case NetworkPacket.TYPE_PROBE_ACK -> {
+                    probeAcknowledged(packet, sender);
+                    return null;
+                }
+                default -> {
+                    if (packet.acceptsDeflate() && compressor != null) {
+                        rememberDeflatePeer(sender);
+                    }
+                    log.debug("Пакет передан сборщику объектов");
+                    return builder.build(packet, sender);
+                }
+            }
+        } catch (IOException | ClassNotFoundException | SerializeException e) {
+            log.debug("Ошибка десериализации пакета: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Отвечает на пробу коротким пакетом: обратный путь не должен влиять на результат зондирования.
+     */
+    private void answerProbe(NetworkPacket probe, InetSocketAddress sender) throws IOException {
+        ByteBuffer packetBuffer = bufferPool.acquire();
+        try {
+            NetworkPacket.writeProbe(packetBuffer, NetworkPacket.TYPE_PROBE_ACK, probe.requestId(), 0);
+            transmit(packetBuffer, sender);
+        } finally {
+            bufferPool.release(packetBuffer);
+        }
+    }
+
+    public long getDatagramsReceived() {
+        return datagramsReceived.sum();
+    }
+
+    public long getDatagramsSent() {
+        return datagramsSent.sum();
+    }
+
+    /**
+     * @return число датаграмм, которые не удалось отправить из-за переполненного буфера сокета
+     */
+    public long getDatagramsDropped() {
+        return datagramsDropped.sum();
+    }
+
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    public long getFragmentsRetransmitted() {
+        return fragmentsRetransmitted.sum();
+    }
+
+    public long getAcksSent() {
+        return acksSent.sum();
+    }
+
+    public long getNacksSent() {
+        return nacksSent.sum();
+    }
+
+    public long getNacksReceived() {
+        return nacksReceived.sum();
+    }
+
+    public long getProbesSent() {
+        return probesSent.sum();
+    }
+
+    /**
+     * Состояние зондирования пути до одного адресата.
+     * Номер пробы - это номер раунда и индекс размера, поэтому опоздавшие ответы прошлого раунда не засчитываются.
+     */
+    static final class Path {
+        private final int[] acks = new int[PROBE_DATAGRAM_SIZES.length];
+        private long round;
+        private long probedNanos;
+        /**
+         * Наибольший размер куска, все пробы которого и всех меньших размеров дошли, или 0, пока такого нет.
+         */
+        volatile int fragmentSize;
+
+        synchronized long startRound(long now) {
+            round++;
+            probedNanos = now;
+            fragmentSize = 0;
+            Arrays.fill(acks, 0);
+            return round;
+        }
+
+        /**
+         * Засчитывает ответ на пробу. Размер принимается, только если дошли все пробы его и всех меньших
+         * размеров: потери на меньшем размере значат, что путь теряет пакеты, а не что крупные проходят лучше.
+         */
+        synchronized void acknowledge(long probeId) {
+            int index = (int) (probeId & 0xFF);
+            if (probeId >>> 8 != round || index >= acks.length || ++acks[index] != PROBE_COPIES) {
+                return;
+            }
+            int confirmed = 0;
+            for (int i = 0; i < acks.length && acks[i] >= PROBE_COPIES; i++) {
+                confirmed = PROBE_DATAGRAM_SIZES[i] - NetworkPacket.HEADER_SIZE;
+            }
+            fragmentSize = confirmed;
+        }
+    }
+
+    /**
+     * Отправляет служебные пакеты надежной доставки по запросу сборщика.
+     */
+    private class ControlSender implements NetworkObjectBuilder.Feedback {
+        @Override
+        public void acknowledge(InetSocketAddress sender, long requestId, int totalPackets) {
+            sendControl(NetworkPacket.TYPE_ACK, sender, requestId, totalPackets, null, 0);
+            acksSent.increment();
+        }
+
+        @Override
+        public void requestMissing(InetSocketAddress sender, long requestId, int totalPackets, int[] indices, int count) {
+            sendControl(NetworkPacket.TYPE_NACK, sender, requestId, totalPackets, indices, count);
+            nacksSent.increment();
+        }
+
+        private void sendControl(byte type, InetSocketAddress target, long requestId, int totalPackets, int[] indices, int count) {
+            ByteBuffer packetBuffer = bufferPool.acquire();
+            try {
+                NetworkPacket.writeControl(packetBuffer, type, requestId, totalPackets, indices, count);
+                transmit(packetBuffer, target);
+            } catch (IOException e) {
+                log.error("Ошибка отправки служебного пакета: {}", e.getMessage());
+            } finally {
+                bufferPool.release(packetBuffer);
+            }
+        }
+    }
+}
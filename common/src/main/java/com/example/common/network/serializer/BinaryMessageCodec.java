@@ -0,0 +1,145 @@
+package com.example.common.network.serializer;
+
+import com.example.common.model.*;
+import com.example.common.network.ApplicationStatus;
+import com.example.common.network.NetworkObject;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * Компактный бинарный кодек NetworkObject и Movie.
+ * Формат: байт MAGIC, байт версии, затем поля в фиксированном порядке.
+ * Целые - varint (знаковые через zigzag), строки - с длиной, перечисления - порядковым номером,
+ * необязательные поля и вложенные объекты - с байтом присутствия.
+ * В отличие от сериализации Java не пишет описаний классов и служебных полей.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+    public static final byte MAGIC = (byte) 0xB7;
+    public static final int VERSION = 1;
+    /**
+     * Буфер записи свой у каждого потока и переиспользуется между сообщениями.
+     */
+    private static final ThreadLocal<WireWriter> WRITERS = ThreadLocal.withInitial(WireWriter::new);
+
+    @Override
+    public ByteBuffer encode(NetworkObject object) {
+        WireWriter out = WRITERS.get();
+        out.reset();
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        writeNullableLong(out, object.id());
+        out.writeEnum(object.status());
+        out.writeString(object.userLogin());
+        out.writeString(object.userPassword());
+        out.writeString(object.command());
+        out.writeString(object.args());
+        out.writeString(object.data());
+        writeMovie(out, object.movie());
+        return out.buffer();
+    }
+
+    @Override
+    public NetworkObject decode(ByteBuffer bytes) {
+        WireReader in = new WireReader(bytes);
+        if ((byte) in.readByte() != MAGIC) {
+            throw new SerializeException("Сообщение не в бинарном формате");
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new SerializeException("Неподдерживаемая версия бинарного формата: " + version);
+        }
+        Long id = readNullableLong(in);
+        ApplicationStatus status = in.readEnum(ApplicationStatus.values());
+        String userLogin = in.readString();
+        String userPassword = in.readString();
+        String command = in.readString();
+        String args = in.readString();
+        String data = in.readString();
+        Movie movie = readMovie(in);
+        return new NetworkObject(id, status, userLogin, userPassword, command, args, data, movie);
+    }
+
+    private static void writeMovie(WireWriter out, Movie movie) {
+        out.writeByte(movie == null ? 0 : 1);
+        if (movie == null) {
+            return;
+        }
+        out.writeSignedVarLong(movie.getId());
+        out.writeString(movie.getName());
+        Coordinates coordinates = movie.getCoordinates();
+        out.writeByte(coordinates == null ? 0 : 1);
+        if (coordinates != null) {
+            out.writeByte(coordinates.getX() == null ? 0 : 1);
+            if (coordinates.getX() != null) {
+                out.writeDouble(coordinates.getX());
+            }
+            out.writeDouble(coordinates.getY());
+        }
+        writeNullableDate(out, movie.getCreationDate());
+        out.writeSignedVarLong(movie.getOscarsCount());
+        writeNullableLong(out, movie.getUsaBoxOffice());
+        out.writeEnum(movie.getGenre());
+        out.writeEnum(movie.getMpaaRating());
+        Person director = movie.getDirector();
+        out.writeByte(director == null ? 0 : 1);
+        if (director != null) {
+            out.writeString(director.getName());
+            writeNullableDate(out, director.getBirthday());
+            writeNullableLong(out, director.getHeight());
+            out.writeSignedVarLong(director.getWeight());
+            out.writeString(director.getPassportID());
+        }
+        out.writeString(movie.getOwnerLogin());
+    }
+
+    private static Movie readMovie(WireReader in) {
+        if (!in.readPresent()) {
+            return null;
+        }
+        int id = in.readSignedVarInt();
+        String name = in.readString();
+        Coordinates coordinates = null;
+        if (in.readPresent()) {
+            Double x = in.readPresent() ? in.readDouble() : null;
+            coordinates = new Coordinates(x, in.readDouble());
+        }
+        Date creationDate = readNullableDate(in);
+        long oscarsCount = in.readSignedVarLong();
+        Long usaBoxOffice = readNullableLong(in);
+        MovieGenre genre = in.readEnum(MovieGenre.values());
+        MpaaRating mpaaRating = in.readEnum(MpaaRating.values());
+        Person director = null;
+        if (in.readPresent()) {
+            String directorName = in.readString();
+            Date birthday = readNullableDate(in);
+            Long height = readNullableLong(in);
+            int weight = in.readSignedVarInt();
+            String passportID = in.readString();
+            director = Person.restore(directorName, birthday, height, weight, passportID);
+        }
+        String ownerLogin = in.readString();
+        return Movie.restore(id, name, coordinates, creationDate, oscarsCount, usaBoxOffice,
+                genre, mpaaRating, director, ownerLogin);
+    }
+
+    private static void writeNullableLong(WireWriter out, Long value) {
+        out.writeByte(value == null ? 0 : 1);
+        if (value != null) {
+            out.writeSignedVarLong(value);
+        }
+    }
+
+    private static Long readNullableLong(WireReader in) {
+        return in.readPresent() ? in.readSignedVarLong() : null;
+    }
+
+    private static void writeNullableDate(WireWriter out, Date value) {
+        writeNullableLong(out, value == null ? null : value.getTime());
+    }
+
+    private static Date readNullableDate(WireReader in) {
+        Long millis = readNullableLong(in);
+        return millis == null ? null : new Date(millis);
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.common.network.serializer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Доступные кодеки сообщений.
+ * Тип кодека определяется по первому байту сообщения,
+ * поэтому стороны с разными кодеками понимают друг друга.
+ */
+public enum CodecType {
+    JAVA(new JavaMessageCodec()),
+    BINARY(new BinaryMessageCodec());
+
+    private final MessageCodec codec;
+
+    CodecType(MessageCodec codec) {
+        this.codec = codec;
+    }
+
+    public MessageCodec codec() {
+        return codec;
+    }
+
+    /**
+     * Выбирает кодек, которым закодировано сообщение.
+     * @param bytes байты сообщения, позиция буфера не меняется
+     * @return кодек для декодирования
+     */
+    public static MessageCodec detect(ByteBuffer bytes) {
+        if (bytes.hasRemaining() && bytes.get(bytes.position()) == BinaryMessageCodec.MAGIC) {
+            return BINARY.codec;
+        }
+        return JAVA.codec;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.common.network.serializer;
+
+import com.example.common.network.NetworkObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Кодек на стандартной сериализации Java через NetworkSerializer.
+ * Поток сериализации всегда начинается с байтов 0xAC 0xED.
+ */
+public class JavaMessageCodec implements MessageCodec {
+    private final NetworkSerializer serializer = new NetworkSerializer();
+
+    @Override
+    public ByteBuffer encode(NetworkObject object) throws IOException {
+        return ByteBuffer.wrap(serializer.serialize(object));
+    }
+
+    @Override
+    public NetworkObject decode(ByteBuffer bytes) throws IOException {
+        byte[] data = new byte[bytes.remaining()];
+        bytes.get(data);
+        Object object = serializer.deserialize(data);
+        if (!(object instanceof NetworkObject networkObject)) {
+            throw new SerializeException("Получен объект типа " + object.getClass() + ", ожидался NetworkObject");
+        }
+        return networkObject;
+    }
+}
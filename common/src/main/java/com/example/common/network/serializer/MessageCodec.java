@@ -0,0 +1,28 @@
+package com.example.common.network.serializer;
+
+import com.example.common.network.NetworkObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Превращает NetworkObject в байты сообщения и обратно.
+ */
+public interface MessageCodec {
+    /**
+     * Кодирует сообщение.
+     * Результат может указывать на переиспользуемый буфер кодека и действителен
+     * только до следующего вызова encode в том же потоке.
+     * @param object сообщение
+     * @return буфер с байтами сообщения от position до limit
+     */
+    ByteBuffer encode(NetworkObject object) throws IOException;
+
+    /**
+     * Декодирует сообщение из байт буфера от position до limit.
+     * Буфер может быть direct; после вызова его position не определена.
+     * @param bytes байты сообщения
+     * @return сообщение
+     */
+    NetworkObject decode(ByteBuffer bytes) throws IOException;
+}
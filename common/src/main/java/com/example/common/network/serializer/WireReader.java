@@ -0,0 +1,106 @@
+package com.example.common.network.serializer;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Чтение примитивов бинарного формата, записанных WireWriter.
+ * Любое несоответствие формату приводит к SerializeException.
+ */
+final class WireReader {
+    private static final int MAX_RETAINED = 1 << 20;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[256]);
+
+    private final ByteBuffer buffer;
+
+    WireReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    int readByte() {
+        try {
+            return buffer.get() & 0xFF;
+        } catch (BufferUnderflowException e) {
+            throw new SerializeException("Сообщение обрезано");
+        }
+    }
+
+    long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SerializeException("Слишком длинный varint");
+    }
+
+    long readSignedVarLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readSignedVarInt() {
+        return Math.toIntExact(readSignedVarLong());
+    }
+
+    double readDouble() {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | readByte();
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    String readString() {
+        long length = readVarLong();
+        if (length == 0) {
+            return null;
+        }
+        int size = (int) (length - 1);
+        if (size < 0 || size > buffer.remaining()) {
+            throw new SerializeException("Неверная длина строки: " + size);
+        }
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), size, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + size);
+            return value;
+        }
+        byte[] bytes = scratch(size);
+        buffer.get(bytes, 0, size);
+        return new String(bytes, 0, size, StandardCharsets.UTF_8);
+    }
+
+    <E extends Enum<E>> E readEnum(E[] values) {
+        long ordinal = readVarLong();
+        if (ordinal == 0) {
+            return null;
+        }
+        if (ordinal > values.length) {
+            throw new SerializeException("Неизвестное значение перечисления: " + (ordinal - 1));
+        }
+        return values[(int) ordinal - 1];
+    }
+
+    boolean readPresent() {
+        return readByte() != 0;
+    }
+
+    /**
+     * Промежуточный массив для строк из direct-буфера, свой у каждого потока.
+     * Слишком большой массив не удерживается, чтобы одно огромное сообщение не держало память.
+     */
+    private static byte[] scratch(int size) {
+        byte[] bytes = SCRATCH.get();
+        if (bytes.length < size) {
+            bytes = new byte[Math.max(size, bytes.length * 2)];
+            if (bytes.length <= MAX_RETAINED) {
+                SCRATCH.set(bytes);
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.common.network.serializer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Запись примитивов бинарного формата в растущий массив байт.
+ * Целые пишутся как varint (знаковые - через zigzag), строки - длиной и байтами UTF-8.
+ * Массив переиспользуется после reset, строки кодируются прямо в него без промежуточных копий.
+ */
+final class WireWriter {
+    private static final int INITIAL_CAPACITY = 256;
+    /**
+     * Массив больше этого размера не удерживается после reset.
+     */
+    private static final int MAX_RETAINED = 1 << 20;
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private ByteBuffer view = ByteBuffer.wrap(bytes);
+    private int position;
+
+    void reset() {
+        if (bytes.length > MAX_RETAINED) {
+            bytes = new byte[INITIAL_CAPACITY];
+            view = ByteBuffer.wrap(bytes);
+        }
+        position = 0;
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        bytes[position++] = (byte) value;
+    }
+
+    void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+    }
+
+    void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            bytes[position++] = (byte) (bits >>> (56 - 8 * i));
+        }
+    }
+
+    /**
+     * Пишет строку: 0 для null, иначе длина в байтах плюс один и сами байты.
+     * Одиночные суррогаты заменяются на '?', как в String.getBytes.
+     */
+    void writeString(String value) {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        int length = utf8Length(value);
+        writeVarLong(length + 1L);
+        ensureCapacity(length);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (isSurrogatePair(value, i)) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                bytes[position++] = '?';
+            } else {
+                bytes[position++] = (byte) (0xE0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Пишет перечисление: 0 для null, иначе порядковый номер плюс один.
+     */
+    void writeEnum(Enum<?> value) {
+        writeVarLong(value == null ? 0 : value.ordinal() + 1L);
+    }
+
+    /**
+     * @return буфер над записанными байтами, действителен до следующей записи или reset
+     */
+    ByteBuffer buffer() {
+        view.clear().limit(position);
+        return view;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + extra));
+            view = ByteBuffer.wrap(bytes);
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (isSurrogatePair(value, i)) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isSurrogatePair(String value, int index) {
+        return Character.isHighSurrogate(value.charAt(index))
+                && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1));
+    }
+}
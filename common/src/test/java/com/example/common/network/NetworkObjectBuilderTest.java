@@ -0,0 +1,172 @@
+package com.example.common.network;
+
+import com.example.common.network.serializer.CodecType;
+import com.example.common.network.serializer.SerializeException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Границы сборщика: бюджет памяти на отправителя и общий, таймаут сборки и память о собранных сообщениях.
+ * Блоки сборки по 4 КБ, бюджет 64 КБ, так что одному отправителю достается 16 КБ.
+ */
+class NetworkObjectBuilderTest {
+    private static final int CHUNK_SIZE = 4096;
+    private static final long BUDGET = 64 << 10;
+    private static final int FRAGMENT_SIZE = 1024;
+    private static final InetSocketAddress SPOOFER = new InetSocketAddress("10.0.0.1", 1000);
+    private static final InetSocketAddress CLIENT = new InetSocketAddress("10.0.0.2", 2000);
+
+    private final BufferPool pool = new BufferPool(CHUNK_SIZE, 64);
+    private final List<Long> acknowledged = new ArrayList<>();
+
+    @Test
+    void senderOverItsShareEvictsOnlyItsOwnMessages() throws Exception {
+        NetworkObjectBuilder builder = builder(10_000);
+        ByteBuffer garbage = randomBytes(8 * CHUNK_SIZE);
+        // Начала множества длинных сообщений, которые никогда не будут дописаны
+        for (long id = 0; id < 100; id++) {
+            for (int index = 0; index < 8 * CHUNK_SIZE / FRAGMENT_SIZE; index += CHUNK_SIZE / FRAGMENT_SIZE) {
+                assertNull(builder.build(fragment(garbage, id, index, 0), SPOOFER));
+            }
+            assertTrue(builder.getBufferedBytes() <= BUDGET / 4);
+        }
+        assertTrue(builder.getEvictedMessages() > 90);
+
+        NetworkObject object = new NetworkObject(5L, ApplicationStatus.RUNNING, null, null, "show", null, "x".repeat(6_000), null);
+        ByteBuffer message = encode(object);
+        int total = totalPackets(message);
+        NetworkObject assembled = null;
+        for (int index = 0; index < total; index++) {
+            assembled = builder.build(fragment(message, 5L, index, 0), CLIENT);
+        }
+        assertNotNull(assembled);
+        assertEquals(object.data(), assembled.data());
+    }
+
+    @Test
+    void rejectsMessageLongerThanSenderShare() throws Exception {
+        NetworkObjectBuilder builder = builder(10_000);
+        ByteBuffer huge = randomBytes((int) (BUDGET / 4) + 1);
+
+        assertNull(builder.build(fragment(huge, 1L, 0, 0), SPOOFER));
+        assertEquals(0, builder.getPendingMessages());
+        assertEquals(0, builder.getBufferedBytes());
+        assertEquals(1, builder.getEvictedMessages());
+    }
+
+    @Test
+    void manySendersEvictGloballyOldestWithinBudget() throws Exception {
+        NetworkObjectBuilder builder = builder(10_000);
+        ByteBuffer garbage = randomBytes(4 * CHUNK_SIZE);
+        for (int sender = 0; sender < 40; sender++) {
+            InetSocketAddress address = new InetSocketAddress("10.0.1." + sender, 3000);
+            for (int index = 0; index < 4 * CHUNK_SIZE / FRAGMENT_SIZE; index += CHUNK_SIZE / FRAGMENT_SIZE) {
+                builder.build(fragment(garbage, sender, index, 0), address);
+            }
+            assertTrue(builder.getBufferedBytes() <= BUDGET);
+        }
+        assertEquals(BUDGET / (4 * CHUNK_SIZE), builder.getPendingMessages());
+        assertEquals(40 - BUDGET / (4 * CHUNK_SIZE), builder.getEvictedMessages());
+    }
+
+    @Test
+    void expiresIncompleteMessageAndReturnsItsBuffers() throws Exception {
+        NetworkObjectBuilder builder = builder(50);
+        ByteBuffer message = encode(new NetworkObject(9L, ApplicationStatus.RUNNING, null, null, "show", null, "y".repeat(3_000), null));
+        int total = totalPackets(message);
+        assertTrue(total > 1);
+        assertNull(builder.build(fragment(message, 9L, 0, 0), CLIENT));
+        assertEquals(1, builder.getPendingMessages());
+        assertTrue(builder.getBufferedBytes() > 0);
+
+        Thread.sleep(80);
+        builder.expire();
+        assertEquals(0, builder.getPendingMessages());
+        assertEquals(0, builder.getBufferedBytes());
+        assertEquals(1, builder.getExpiredMessages());
+
+        // Опоздавший кусок начинает сборку заново, а не дописывает выброшенное сообщение
+        assertNull(builder.build(fragment(message, 9L, total - 1, 0), CLIENT));
+        assertEquals(1, builder.getPendingMessages());
+    }
+
+    @Test
+    void completedReliableMessageIsNotAssembledTwice() throws Exception {
+        NetworkObjectBuilder builder = builder(10_000);
+        ByteBuffer message = encode(new NetworkObject(3L, ApplicationStatus.RUNNING, null, null, "add", null, "z".repeat(3_000), null));
+        int total = totalPackets(message);
+        NetworkObject assembled = null;
+        for (int index = 0; index < total; index++) {
+            assembled = builder.build(fragment(message, 3L, index, NetworkPacket.FLAG_RELIABLE), CLIENT);
+        }
+        assertNotNull(assembled);
+        assertEquals(List.of(3L), acknowledged);
+
+        // Повтор после потерянного ACK: сообщение не выполняется второй раз, но подтверждается снова
+        for (int index = 0; index < total; index++) {
+            assertNull(builder.build(fragment(message, 3L, index, NetworkPacket.FLAG_RELIABLE), CLIENT));
+        }
+        assertEquals(total, builder.getDuplicateFragments());
+        assertEquals(total + 1, acknowledged.size());
+        assertEquals(0, builder.getPendingMessages());
+    }
+
+    @Test
+    void rejectsCompressedPacketsUnlessEnabled() throws Exception {
+        NetworkObjectBuilder builder = builder(10_000);
+        ByteBuffer message = encode(new NetworkObject(4L, ApplicationStatus.RUNNING, null, null, "show", null, null, null));
+        assertThrows(SerializeException.class, () -> builder.build(fragment(message, 4L, 0, NetworkPacket.FLAG_COMPRESSED), CLIENT));
+        assertEquals(0, builder.getPendingMessages());
+        assertEquals(0, builder.getMessagesAssembled());
+    }
+
+    private NetworkObjectBuilder builder(long timeoutMillis) {
+        NetworkObjectBuilder builder = new NetworkObjectBuilder(pool, BUDGET, timeoutMillis, TimeUnit.MILLISECONDS);
+        builder.setFeedback(new NetworkObjectBuilder.Feedback() {
+            @Override
+            public void acknowledge(InetSocketAddress sender, long requestId, int totalPackets) {
+                acknowledged.add(requestId);
+            }
+
+            @Override
+            public void requestMissing(InetSocketAddress sender, long requestId, int totalPackets, int[] indices, int count) {
+            }
+        });
+        return builder;
+    }
+
+    static ByteBuffer encode(NetworkObject object) throws IOException {
+        ByteBuffer encoded = CodecType.BINARY.codec().encode(object);
+        ByteBuffer copy = ByteBuffer.allocate(encoded.remaining());
+        copy.put(encoded).flip();
+        return copy;
+    }
+
+    static int totalPackets(ByteBuffer message) {
+        return (message.remaining() + FRAGMENT_SIZE - 1) / FRAGMENT_SIZE;
+    }
+
+    /**
+     * @return разобранный пакет с куском index сообщения message
+     */
+    static NetworkPacket fragment(ByteBuffer message, long requestId, int index, int flags) {
+        ByteBuffer datagram = ByteBuffer.allocate(NetworkPacket.MAX_DATAGRAM_SIZE);
+        NetworkPacket.write(datagram, (byte) flags, requestId, index, totalPackets(message), message, FRAGMENT_SIZE);
+        return NetworkPacket.read(datagram);
+    }
+
+    private static ByteBuffer randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+}
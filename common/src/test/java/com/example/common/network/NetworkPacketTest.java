@@ -0,0 +1,152 @@
+package com.example.common.network;
+
+import com.example.common.network.serializer.SerializeException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetworkPacketTest {
+    private static final int VERSION_OFFSET = 2;
+    private static final int TYPE_OFFSET = 3;
+    private static final int INDEX_OFFSET = 13;
+    private static final int TOTAL_OFFSET = 17;
+    private static final int MESSAGE_LENGTH_OFFSET = 21;
+    private static final int OFFSET_OFFSET = 25;
+    private static final int LENGTH_OFFSET = 29;
+
+    private final ByteBuffer message = ByteBuffer.wrap("сообщение, разбитое на несколько кусков".getBytes(StandardCharsets.UTF_8));
+
+    @Test
+    void readsWhatWriteWrote() {
+        ByteBuffer datagram = fragment(1, 3, 16);
+
+        NetworkPacket packet = NetworkPacket.read(datagram);
+
+        assertEquals(NetworkPacket.TYPE_DATA, packet.type());
+        assertTrue(packet.isReliable());
+        assertFalse(packet.isCompressed());
+        assertEquals(77L, packet.requestId());
+        assertEquals(1, packet.packetIndex());
+        assertEquals(3, packet.totalPackets());
+        assertEquals(message.remaining(), packet.messageLength());
+        assertEquals(16, packet.offset());
+        assertEquals(message.duplicate().position(16).limit(32), packet.payload());
+    }
+
+    @Test
+    void readsSinglePacketMessage() {
+        NetworkPacket packet = NetworkPacket.read(fragment(0, 1, message.remaining()));
+
+        assertEquals(1, packet.totalPackets());
+        assertEquals(message, packet.payload());
+    }
+
+    @Test
+    void readsControlPackets() {
+        ByteBuffer datagram = ByteBuffer.allocate(NetworkPacket.MAX_DATAGRAM_SIZE);
+        NetworkPacket.writeControl(datagram, NetworkPacket.TYPE_NACK, 5L, 4, new int[]{1, 3}, 2);
+
+        NetworkPacket packet = NetworkPacket.read(datagram);
+
+        assertEquals(NetworkPacket.TYPE_NACK, packet.type());
+        assertEquals(2 * Integer.BYTES, packet.payload().remaining());
+        assertEquals(1, packet.payload().getInt());
+        assertEquals(3, packet.payload().getInt());
+    }
+
+    @Test
+    void rejectsDatagramShorterThanHeader() {
+        assertRejected(ByteBuffer.allocate(NetworkPacket.HEADER_SIZE - 1));
+    }
+
+    @Test
+    void rejectsUnknownMagicVersionAndType() {
+        ByteBuffer foreign = fragment(0, 1, message.remaining());
+        foreign.putShort(0, (short) 0x1234);
+        assertRejected(foreign);
+
+        ByteBuffer oldVersion = fragment(0, 1, message.remaining());
+        oldVersion.put(VERSION_OFFSET, (byte) (NetworkPacket.VERSION - 1));
+        assertRejected(oldVersion);
+
+        ByteBuffer unknownType = fragment(0, 1, message.remaining());
+        unknownType.put(TYPE_OFFSET, (byte) (NetworkPacket.TYPE_PROBE_ACK + 1));
+        assertRejected(unknownType);
+    }
+
+    @Test
+    void rejectsIndexOutsideTotal() {
+        ByteBuffer pastEnd = fragment(1, 3, 16);
+        pastEnd.putInt(INDEX_OFFSET, 3);
+        assertRejected(pastEnd);
+
+        ByteBuffer negative = fragment(1, 3, 16);
+        negative.putInt(INDEX_OFFSET, -1);
+        assertRejected(negative);
+
+        ByteBuffer noPackets = fragment(1, 3, 16);
+        noPackets.putInt(TOTAL_OFFSET, 0);
+        assertRejected(noPackets);
+    }
+
+    @Test
+    void rejectsLengthNotMatchingDatagram() {
+        ByteBuffer longer = fragment(1, 3, 16);
+        longer.putInt(LENGTH_OFFSET, 17);
+        assertRejected(longer);
+
+        ByteBuffer cut = fragment(1, 3, 16);
+        cut.limit(cut.limit() - 1);
+        assertRejected(cut);
+    }
+
+    @Test
+    void rejectsFragmentOutsideMessage() {
+        ByteBuffer pastEnd = fragment(1, 3, 16);
+        pastEnd.putInt(OFFSET_OFFSET, message.remaining() - 8);
+        assertRejected(pastEnd);
+
+        ByteBuffer negative = fragment(1, 3, 16);
+        negative.putInt(OFFSET_OFFSET, -16);
+        assertRejected(negative);
+
+        ByteBuffer overflow = fragment(1, 3, 16);
+        overflow.putInt(OFFSET_OFFSET, Integer.MAX_VALUE);
+        assertRejected(overflow);
+
+        ByteBuffer shortMessage = fragment(1, 3, 16);
+        shortMessage.putInt(MESSAGE_LENGTH_OFFSET, 20);
+        assertRejected(shortMessage);
+    }
+
+    @Test
+    void rejectsSinglePacketThatIsNotWholeMessage() {
+        ByteBuffer single = fragment(0, 1, message.remaining());
+        single.putInt(MESSAGE_LENGTH_OFFSET, message.remaining() + 1);
+        assertRejected(single);
+    }
+
+    @Test
+    void rejectsCorruptedPayload() {
+        ByteBuffer datagram = fragment(1, 3, 16);
+        int last = datagram.limit() - 1;
+        datagram.put(last, (byte) (datagram.get(last) ^ 1));
+        assertRejected(datagram);
+    }
+
+    /**
+     * @return датаграмма с куском index сообщения message, разбитого на куски по fragmentSize
+     */
+    private ByteBuffer fragment(int index, int total, int fragmentSize) {
+        ByteBuffer datagram = ByteBuffer.allocate(NetworkPacket.MAX_DATAGRAM_SIZE);
+        NetworkPacket.write(datagram, NetworkPacket.FLAG_RELIABLE, 77L, index, total, message, fragmentSize);
+        return datagram;
+    }
+
+    private static void assertRejected(ByteBuffer datagram) {
+        assertThrows(SerializeException.class, () -> NetworkPacket.read(datagram));
+    }
+}
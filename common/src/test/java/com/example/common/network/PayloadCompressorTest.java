@@ -0,0 +1,106 @@
+package com.example.common.network;
+
+import com.example.common.network.serializer.SerializeException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Распаковка не должна доверять заявленной длине: проверяются потолок размера, потолок степени сжатия
+ * и поврежденные потоки.
+ */
+class PayloadCompressorTest {
+
+    @Test
+    void roundTripRestoresMessage() {
+        byte[] text = "фильм ".repeat(2_000).getBytes();
+        ByteBuffer compressed = copy(new PayloadCompressor(512, Deflater.BEST_SPEED).compress(ByteBuffer.wrap(text)));
+        assertTrue(compressed.remaining() < text.length);
+
+        ByteBuffer inflated = PayloadCompressor.inflate(compressed);
+        byte[] restored = new byte[inflated.remaining()];
+        inflated.get(restored);
+        assertArrayEquals(text, restored);
+    }
+
+    @Test
+    void skipsSmallAndIncompressibleMessages() {
+        PayloadCompressor compressor = new PayloadCompressor(512, Deflater.BEST_SPEED);
+        assertNull(compressor.compress(ByteBuffer.allocate(100)));
+
+        byte[] noise = new byte[4_096];
+        new Random(1).nextBytes(noise);
+        assertNull(compressor.compress(ByteBuffer.wrap(noise)));
+        assertEquals(1, compressor.getMessagesIncompressible());
+    }
+
+    @Test
+    void rejectsBombBeyondCompressionRatio() {
+        // Настоящий поток нулей: 16 МБ сжимаются примерно в 16 КБ, то есть сильнее 256:1
+        ByteBuffer bomb = deflate(new byte[16 << 20]);
+        assertTrue(bomb.getInt(0) > (long) (bomb.remaining() - Integer.BYTES) * PayloadCompressor.MAX_COMPRESSION_RATIO);
+        assertThrows(SerializeException.class, () -> PayloadCompressor.inflate(bomb));
+    }
+
+    @Test
+    void rejectsDeclaredLengthOverLimit() {
+        ByteBuffer compressed = deflate(new byte[1_000]);
+        compressed.putInt(0, PayloadCompressor.MAX_INFLATED_SIZE + 1);
+        assertThrows(SerializeException.class, () -> PayloadCompressor.inflate(compressed.duplicate()));
+
+        compressed.putInt(0, -1);
+        assertThrows(SerializeException.class, () -> PayloadCompressor.inflate(compressed.duplicate()));
+    }
+
+    @Test
+    void stopsAtDeclaredLengthWhenStreamIsLonger() {
+        // Заявлено меньше, чем лежит в потоке: распаковка не должна выйти за заявленную длину
+        ByteBuffer compressed = deflate(new byte[100_000]);
+        compressed.putInt(0, 1_000);
+        assertThrows(SerializeException.class, () -> PayloadCompressor.inflate(compressed));
+    }
+
+    @Test
+    void rejectsShortAndCorruptStreams() {
+        byte[] text = "фильм ".repeat(2_000).getBytes();
+        ByteBuffer compressed = deflate(text);
+        compressed.putInt(0, text.length + 1);
+        assertThrows(SerializeException.class, () -> PayloadCompressor.inflate(compressed.duplicate()));
+
+        ByteBuffer truncated = deflate(text);
+        truncated.limit(truncated.limit() / 2);
+        assertThrows(SerializeException.class, () -> PayloadCompressor.inflate(truncated));
+
+        ByteBuffer corrupt = deflate(text);
+        corrupt.put(Integer.BYTES, (byte) 0xFF);
+        assertThrows(SerializeException.class, () -> PayloadCompressor.inflate(corrupt));
+
+        assertThrows(SerializeException.class, () -> PayloadCompressor.inflate(ByteBuffer.allocate(3)));
+    }
+
+    /**
+     * @return сообщение в формате compress, но без ограничения на размер результата
+     */
+    private static ByteBuffer deflate(byte[] message) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(message);
+        deflater.finish();
+        ByteBuffer out = ByteBuffer.allocate(Integer.BYTES + message.length + 64);
+        out.putInt(message.length);
+        while (!deflater.finished()) {
+            deflater.deflate(out);
+        }
+        deflater.end();
+        return out.flip();
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer).flip();
+        return copy;
+    }
+}
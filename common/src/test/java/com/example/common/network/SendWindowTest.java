@@ -0,0 +1,110 @@
+package com.example.common.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SendWindowTest {
+    private static final InetSocketAddress TARGET = new InetSocketAddress("127.0.0.1", 9);
+
+    @Test
+    void fullWindowDropsOldestByDefault() throws Exception {
+        SendWindow window = new SendWindow(2, 1, 0, TimeUnit.SECONDS);
+        for (long id = 1; id <= 3; id++) {
+            track(window, id);
+        }
+
+        assertEquals(2, window.getOutstanding());
+        assertEquals(1, window.getAbandoned());
+        assertNull(window.get(TARGET, 1));
+        assertNotNull(window.get(TARGET, 3));
+    }
+
+    @Test
+    void blockingWindowWaitsForAcknowledgement() throws Exception {
+        SendWindow window = new SendWindow(2, 1, 0, TimeUnit.SECONDS, true);
+        track(window, 1);
+        track(window, 2);
+        Thread sender = new Thread(() -> {
+            try {
+                track(window, 3);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        sender.start();
+
+        sender.join(200);
+        assertTrue(sender.isAlive());
+        assertEquals(2, window.getOutstanding());
+
+        window.acknowledge(TARGET, 1);
+        sender.join(5_000);
+        assertFalse(sender.isAlive());
+        assertEquals(0, window.getAbandoned());
+        assertNotNull(window.get(TARGET, 2));
+        assertNotNull(window.get(TARGET, 3));
+    }
+
+    @Test
+    void dueReturnsOnlyExpiredMessagesInDeadlineOrder() throws Exception {
+        SendWindow window = new SendWindow(8, 100, 1, TimeUnit.MILLISECONDS);
+        track(window, 1);
+        track(window, 2);
+        Thread.sleep(120);
+        track(window, 3);
+
+        List<SendWindow.Outstanding> due = window.due();
+        assertEquals(List.of(1L, 2L), due.stream().map(SendWindow.Outstanding::requestId).toList());
+        due.forEach(window::release);
+        assertTrue(window.due().isEmpty());
+
+        // Повтор исчерпан: следующий срок сообщений 1 и 2 бросает их, сообщение 3 повторяется
+        Thread.sleep(250);
+        due = window.due();
+        assertEquals(List.of(3L), due.stream().map(SendWindow.Outstanding::requestId).toList());
+        due.forEach(window::release);
+        assertEquals(2, window.getAbandoned());
+        assertEquals(1, window.getOutstanding());
+    }
+
+    @Test
+    void acknowledgedMessageStaysIntactWhileItIsRetransmitted() throws Exception {
+        SendWindow window = new SendWindow(8, 1, 0, TimeUnit.SECONDS);
+        window.track(TARGET, 1, ByteBuffer.wrap(new byte[]{1, 1, 1}), 1, 16, NetworkPacket.FLAG_RELIABLE);
+        SendWindow.Outstanding retransmitting = window.get(TARGET, 1);
+        window.acknowledge(TARGET, 1);
+
+        // Новое сообщение того же размера не должно получить буфер, который еще читает повтор
+        window.track(TARGET, 2, ByteBuffer.wrap(new byte[]{2, 2, 2}), 1, 16, NetworkPacket.FLAG_RELIABLE);
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 1, 1}), retransmitting.message());
+        window.release(retransmitting);
+
+        SendWindow.Outstanding next = window.get(TARGET, 2);
+        assertEquals(ByteBuffer.wrap(new byte[]{2, 2, 2}), next.message());
+        window.release(next);
+    }
+
+    @Test
+    void keepsMessagesLongerThanPooledBuffers() throws Exception {
+        SendWindow window = new SendWindow(2, 1, 0, TimeUnit.SECONDS);
+        byte[] large = new byte[1 << 20];
+        large[large.length - 1] = 7;
+        window.track(TARGET, 1, ByteBuffer.wrap(large), 1, 16, NetworkPacket.FLAG_RELIABLE);
+
+        SendWindow.Outstanding message = window.get(TARGET, 1);
+        assertEquals(ByteBuffer.wrap(large), message.message());
+        window.release(message);
+        window.acknowledge(TARGET, 1);
+        assertEquals(0, window.getOutstanding());
+    }
+
+    private static void track(SendWindow window, long id) throws Exception {
+        window.track(TARGET, id, ByteBuffer.wrap(new byte[]{1, 2, 3}), 1, 16, NetworkPacket.FLAG_RELIABLE);
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.common.network;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Передача через loopback: отправитель шлет на прокси, который пересылает датаграммы получателю
+ * и выбрасывает куски сообщений по заданному правилу. Ответы получателя прокси пересылает без потерь.
+ */
+class UDPManagerTest {
+    private static final long DEADLINE_MILLIS = 10_000;
+
+    private final List<DatagramChannel> channels = new ArrayList<>();
+    private DatagramChannel receiverChannel;
+    private DatagramChannel senderChannel;
+    private DatagramChannel proxyChannel;
+    private Thread proxy;
+
+    @BeforeEach
+    void openChannels() throws IOException {
+        receiverChannel = open();
+        senderChannel = open();
+        proxyChannel = open();
+    }
+
+    @AfterEach
+    void closeChannels() throws Exception {
+        if (proxy != null) {
+            proxy.interrupt();
+            proxy.join();
+        }
+        for (DatagramChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    @Test
+    void deliversMessagesWithoutLoss() throws Exception {
+        startProxy(index -> false);
+        UDPManager receiver = receiver();
+        UDPManager sender = sender();
+
+        String data = "фильм ".repeat(10_000);
+        sender.send(new NetworkObject(1L, ApplicationStatus.RUNNING, null, null, "show", null, data, null));
+
+        List<NetworkObject> received = exchange(receiver, sender, 1);
+        assertEquals(1, received.size());
+        assertEquals(data, received.get(0).data());
+    }
+
+    @Test
+    void reliableDeliveryRecoversDroppedFragments() throws Exception {
+        // Теряется первый кусок и каждый третий из остальных, в том числе повторы
+        startProxy(index -> index == 1 || index % 3 == 0);
+        UDPManager receiver = receiver();
+        UDPManager sender = sender();
+        sender.enableReliableDelivery(new SendWindow(16, 50, 10, TimeUnit.MILLISECONDS));
+
+        String big = "q".repeat(300_000);
+        sender.send(new NetworkObject(7L, ApplicationStatus.RUNNING, null, null, "show", null, big, null));
+        sender.send(new NetworkObject(8L, ApplicationStatus.RUNNING, null, null, "show", null, "one", null));
+
+        List<NetworkObject> received = exchange(receiver, sender, 2);
+        assertEquals(2, received.size());
+        NetworkObject large = received.stream().filter(object -> object.id() == 7L).findFirst().orElseThrow();
+        NetworkObject small = received.stream().filter(object -> object.id() == 8L).findFirst().orElseThrow();
+        assertEquals(big, large.data());
+        assertEquals("one", small.data());
+        assertTrue(sender.getFragmentsRetransmitted() > 0);
+
+        long deadline = System.currentTimeMillis() + DEADLINE_MILLIS;
+        while (sender.getSendWindow().getOutstanding() > 0 && System.currentTimeMillis() < deadline) {
+            pump(receiver, sender, new ArrayList<>());
+        }
+        assertEquals(0, sender.getSendWindow().getOutstanding());
+        assertEquals(2, sender.getSendWindow().getAcknowledged());
+    }
+
+    @Test
+    void droppedFragmentsWithoutReliableDeliveryLoseOnlyTheirMessage() throws Exception {
+        // Теряется второй кусок: составное сообщение не собирается, следующее доходит
+        startProxy(index -> index == 2);
+        UDPManager receiver = receiver();
+        UDPManager sender = sender();
+
+        sender.send(new NetworkObject(1L, ApplicationStatus.RUNNING, null, null, "show", null, "x".repeat(20_000), null));
+        sender.send(new NetworkObject(2L, ApplicationStatus.RUNNING, null, null, "show", null, "after", null));
+
+        List<NetworkObject> received = exchange(receiver, sender, 1);
+        assertEquals(1, received.size());
+        assertEquals(2L, received.get(0).id());
+        assertEquals(1, receiver.getBuilder().getPendingMessages());
+    }
+
+    @Test
+    void pathAcceptsSizeOnlyWhenItAndAllSmallerSizesArrived() {
+        UDPManager.Path path = new UDPManager.Path();
+        long round = path.startRound(System.nanoTime());
+        int jumbo = UDPManager.PROBE_DATAGRAM_SIZES.length - 1;
+
+        // Все копии крупной пробы дошли, а из наименьшей одна потерялась
+        acknowledge(path, round, jumbo, 3);
+        acknowledge(path, round, 0, 2);
+        assertEquals(0, path.fragmentSize);
+
+        acknowledge(path, round, 0, 1);
+        for (int i = 1; i < jumbo; i++) {
+            acknowledge(path, round, i, 3);
+        }
+        assertEquals(UDPManager.PROBE_DATAGRAM_SIZES[jumbo] - NetworkPacket.HEADER_SIZE, path.fragmentSize);
+    }
+
+    @Test
+    void pathKeepsSmallerSizeWhenLargerLostCopies() {
+        UDPManager.Path path = new UDPManager.Path();
+        long round = path.startRound(System.nanoTime());
+
+        acknowledge(path, round, 0, 3);
+        acknowledge(path, round, UDPManager.PROBE_DATAGRAM_SIZES.length - 1, 2);
+        assertEquals(UDPManager.PROBE_DATAGRAM_SIZES[0] - NetworkPacket.HEADER_SIZE, path.fragmentSize);
+    }
+
+    @Test
+    void pathIgnoresAnswersFromPreviousRound() {
+        UDPManager.Path path = new UDPManager.Path();
+        long old = path.startRound(System.nanoTime());
+        long round = path.startRound(System.nanoTime());
+
+        acknowledge(path, old, 0, 3);
+        assertEquals(0, path.fragmentSize);
+        acknowledge(path, round, 0, 3);
+        assertEquals(UDPManager.PROBE_DATAGRAM_SIZES[0] - NetworkPacket.HEADER_SIZE, path.fragmentSize);
+    }
+
+    private static void acknowledge(UDPManager.Path path, long round, int sizeIndex, int copies) {
+        for (int i = 0; i < copies; i++) {
+            path.acknowledge(round << 8 | sizeIndex);
+        }
+    }
+
+    private UDPManager receiver() {
+        return new UDPManager(receiverChannel, new NetworkObjectBuilder());
+    }
+
+    private UDPManager sender() throws IOException {
+        return new UDPManager(senderChannel, new NetworkObjectBuilder(),
+                (InetSocketAddress) proxyChannel.getLocalAddress());
+    }
+
+    /**
+     * Обслуживает обе стороны, пока получатель не соберет expected сообщений или не выйдет время.
+     */
+    private List<NetworkObject> exchange(UDPManager receiver, UDPManager sender, int expected) throws Exception {
+        List<NetworkObject> received = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + DEADLINE_MILLIS;
+        while (received.size() < expected && System.currentTimeMillis() < deadline) {
+            pump(receiver, sender, received);
+        }
+        // Повторы и опоздавшие куски не должны давать второй копии сообщения
+        long settle = System.currentTimeMillis() + 200;
+        while (System.currentTimeMillis() < settle) {
+            pump(receiver, sender, received);
+        }
+        return received;
+    }
+
+    private static void pump(UDPManager receiver, UDPManager sender, List<NetworkObject> received) throws Exception {
+        receiver.drain(object -> received.add(object.object()));
+        sender.drain(object -> { });
+        receiver.tick();
+        sender.tick();
+        Thread.sleep(5);
+    }
+
+    /**
+     * Запускает прокси. Куски сообщений от отправителя нумеруются с единицы в порядке прихода,
+     * куски, для номеров которых drop истинно, выбрасываются.
+     */
+    private void startProxy(IntPredicate drop) throws IOException {
+        SocketAddress senderAddress = senderChannel.getLocalAddress();
+        SocketAddress receiverAddress = receiverChannel.getLocalAddress();
+        AtomicInteger fragments = new AtomicInteger();
+        proxy = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(NetworkPacket.MAX_DATAGRAM_SIZE);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    buffer.clear();
+                    SocketAddress from = proxyChannel.receive(buffer);
+                    if (from == null) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    buffer.flip();
+                    if (!from.equals(senderAddress)) {
+                        proxyChannel.send(buffer, senderAddress);
+                    } else if (buffer.get(3) != NetworkPacket.TYPE_DATA || !drop.test(fragments.incrementAndGet())) {
+                        proxyChannel.send(buffer, receiverAddress);
+                    }
+                }
+            } catch (IOException e) {
+                // Канал закрыт после теста
+            }
+        });
+        proxy.setDaemon(true);
+        proxy.start();
+    }
+
+    private DatagramChannel open() throws IOException {
+        DatagramChannel channel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, 8 << 20);
+        channels.add(channel);
+        return channel;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.common.network.serializer;
+
+import com.example.common.model.*;
+import com.example.common.network.ApplicationStatus;
+import com.example.common.network.NetworkObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryMessageCodecTest {
+    private final BinaryMessageCodec codec = new BinaryMessageCodec();
+
+    @Test
+    void roundTripsMessageWithFullMovie() {
+        Person director = new Person("Режиссер", new Date(-86_400_000L), 180L, 80, "passport1");
+        Movie movie = new Movie(42, "Фильм", new Coordinates(1.5, -2.5), new Date(1_700_000_000_000L),
+                3, 1_000_000L, MovieGenre.DRAMA, MpaaRating.R, director, "user");
+        NetworkObject object = new NetworkObject(-123_456_789L, ApplicationStatus.SEND, "user", "pw", "add",
+                "аргументы", "данные", movie);
+
+        NetworkObject decoded = roundTrip(object);
+
+        assertEquals(object.id(), decoded.id());
+        assertEquals(object.status(), decoded.status());
+        assertEquals(object.userLogin(), decoded.userLogin());
+        assertEquals(object.userPassword(), decoded.userPassword());
+        assertEquals(object.command(), decoded.command());
+        assertEquals(object.args(), decoded.args());
+        assertEquals(object.data(), decoded.data());
+        assertMovieEquals(movie, decoded.movie());
+    }
+
+    @Test
+    void roundTripsMovieWithOptionalFieldsMissing() {
+        Movie movie = new Movie(Integer.MIN_VALUE, "", new Coordinates(null, 0), new Date(0),
+                Long.MAX_VALUE, null, null, null, null, null);
+        NetworkObject decoded = roundTrip(new NetworkObject(Long.MAX_VALUE, ApplicationStatus.RUNNING, null, null,
+                "show", null, null, movie));
+
+        assertEquals(Long.MAX_VALUE, decoded.id());
+        assertNull(decoded.userLogin());
+        assertNull(decoded.args());
+        assertMovieEquals(movie, decoded.movie());
+    }
+
+    @Test
+    void keepsMissingCreationDateAndPassport() {
+        Person director = Person.restore("Режиссер", null, null, 0, null);
+        Movie movie = Movie.restore(1, "Фильм", null, null, 0, null, null, null, director, "user");
+        Movie decoded = roundTrip(new NetworkObject(1L, ApplicationStatus.RUNNING, null, null, "show", null, null, movie)).movie();
+
+        assertNull(decoded.getCreationDate());
+        assertNull(decoded.getDirector().getPassportID());
+        assertMovieEquals(movie, decoded);
+    }
+
+    @Test
+    void roundTripsEmptyMessage() {
+        NetworkObject decoded = roundTrip(new NetworkObject(null, null, null, null, null, null, null, null));
+
+        assertNull(decoded.id());
+        assertNull(decoded.status());
+        assertNull(decoded.command());
+        assertNull(decoded.movie());
+    }
+
+    @Test
+    void roundTripsLongStrings() {
+        String data = "строка ".repeat(50_000);
+        assertEquals(data, roundTrip(new NetworkObject(1L, ApplicationStatus.RUNNING, null, null, null, null, data, null)).data());
+    }
+
+    @Test
+    void detectTellsBinaryFromJavaSerialization() throws Exception {
+        NetworkObject object = new NetworkObject(7L, ApplicationStatus.RUNNING, "user", null, "show", "10", null, null);
+        assertSame(CodecType.BINARY.codec(), CodecType.detect(CodecType.BINARY.codec().encode(object)));
+        ByteBuffer java = CodecType.JAVA.codec().encode(object);
+        assertSame(CodecType.JAVA.codec(), CodecType.detect(java));
+        assertEquals(object, CodecType.detect(java).decode(java));
+    }
+
+    @Test
+    void rejectsTruncatedAndForeignInput() {
+        ByteBuffer encoded = codec.encode(new NetworkObject(1L, ApplicationStatus.RUNNING, "user", "pw", "show", "10", "data", null));
+        ByteBuffer truncated = copy(encoded);
+        truncated.limit(truncated.limit() - 3);
+        assertThrows(SerializeException.class, () -> codec.decode(truncated));
+
+        ByteBuffer foreign = copy(encoded);
+        foreign.put(0, (byte) 0);
+        assertThrows(SerializeException.class, () -> codec.decode(foreign));
+
+        ByteBuffer futureVersion = copy(encoded);
+        futureVersion.put(1, (byte) (BinaryMessageCodec.VERSION + 1));
+        assertThrows(SerializeException.class, () -> codec.decode(futureVersion));
+    }
+
+    private NetworkObject roundTrip(NetworkObject object) {
+        return codec.decode(copy(codec.encode(object)));
+    }
+
+    /**
+     * encode возвращает буфер потока, поэтому байты копируются до следующего кодирования.
+     */
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate()).flip();
+        return copy;
+    }
+
+    private static void assertMovieEquals(Movie expected, Movie actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getCoordinates(), actual.getCoordinates());
+        assertEquals(expected.getCreationDate(), actual.getCreationDate());
+        assertEquals(expected.getOscarsCount(), actual.getOscarsCount());
+        assertEquals(expected.getUsaBoxOffice(), actual.getUsaBoxOffice());
+        assertEquals(expected.getGenre(), actual.getGenre());
+        assertEquals(expected.getMpaaRating(), actual.getMpaaRating());
+        assertEquals(expected.getDirector(), actual.getDirector());
+        assertEquals(expected.getOwnerLogin(), actual.getOwnerLogin());
+    }
+}
@@ -2,6 +2,7 @@ package com.example.DB;
 
 import com.example.common.model.Movie;
 
+import java.util.List;
 import java.util.TreeSet;
 
 /**
@@ -28,6 +29,23 @@ public interface CollectionManager {
     void deleteAllElem(String login);
 
     TreeSet<Movie> getCollection();
+
+    /**
+     * Возвращает страницу коллекции в ее естественном порядке, фильмы с равным ключом - по id.
+     * @param after элемент, после которого начинается страница, или null для первой страницы
+     * @param limit максимальное число элементов
+     * @return элементы страницы
+     */
+    List<Movie> getPage(Movie after, int limit);
+
+    /**
+     * Возвращает страницу фильмов пользователя в том же порядке, что и getPage.
+     * @param login логин владельца
+     * @param after элемент, после которого начинается страница, или null для первой страницы
+     * @param limit максимальное число элементов
+     * @return элементы страницы
+     */
+    List<Movie> getPageOfOwner(String login, Movie after, int limit);
     boolean addElemIfMax(Movie movie);
 
     /**
@@ -40,6 +58,12 @@ public interface CollectionManager {
     int removeGreaterElements(Movie movie);
     Movie getElemWithMinCreationDate();
     Movie getElemWithMaxId();
-    public TreeSet<Movie> getElemsWithMatchName(String filter);
+
+    /**
+     * Находит фильмы, название которых начинается с filter.
+     * @param filter префикс названия
+     * @return фильмы по названию, а при равных названиях - по id
+     */
+    List<Movie> getElemsWithMatchName(String filter);
 }
 
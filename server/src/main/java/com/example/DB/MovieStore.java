@@ -0,0 +1,309 @@
+package com.example.DB;
+
+import com.example.common.model.Movie;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Неизменяемая версия коллекции с четырьмя индексами: первичным по id, упорядоченным по (oscarsCount, usaBoxOffice, id),
+ * упорядоченным по владельцу, а внутри владельца - так же, как второй, и упорядоченным по (name, id).
+ * В индексе по владельцу фильмы одного пользователя лежат подряд, а в индексе по названию подряд лежат
+ * названия с общим префиксом, поэтому такие запросы стоят O(log n + k), где k - размер ответа, а не O(n).
+ * Естественный порядок Movie не различает фильмы с одинаковыми оскарами и сборами,
+ * поэтому id в упорядоченном индексе добавлен последним ключом: такие фильмы не теряются,
+ * а удаление убирает именно тот фильм, который нужно.
+ * Изменения возвращают новую версию, общую со старой во всем, кроме пути до измененного элемента:
+ * упорядоченные индексы - персистентные декартовы деревья, индекс по id - PersistentIntMovieMap.
+ * Поэтому версию можно обходить из любого числа потоков без блокировок, пока пишущий поток готовит следующую.
+ * Фильмы, попавшие в опубликованную версию, менять нельзя.
+ */
+final class MovieStore {
+    /**
+     * Естественный порядок фильмов, уточненный по id.
+     */
+    static final Comparator<Movie> ORDER = Comparator.<Movie>naturalOrder().thenComparingInt(Movie::getId);
+    /**
+     * Порядок индекса по владельцу: логин, затем ORDER.
+     */
+    static final Comparator<Movie> OWNER_ORDER = Comparator.comparing(Movie::getOwnerLogin,
+            Comparator.nullsFirst(Comparator.<String>naturalOrder())).thenComparing(ORDER);
+    /**
+     * Порядок индекса по названию: название, затем id.
+     */
+    static final Comparator<Movie> NAME_ORDER = Comparator.comparing(Movie::getName,
+            Comparator.nullsFirst(Comparator.<String>naturalOrder())).thenComparingInt(Movie::getId);
+    static final MovieStore EMPTY = new MovieStore(PersistentIntMovieMap.EMPTY, null, null, null);
+
+    private final PersistentIntMovieMap byId;
+    private final Node root;
+    private final Node byOwner;
+    private final Node byName;
+
+    private MovieStore(PersistentIntMovieMap byId, Node root, Node byOwner, Node byName) {
+        this.byId = byId;
+        this.root = root;
+        this.byOwner = byOwner;
+        this.byName = byName;
+    }
+
+    /**
+     * @return фильм с id или null
+     */
+    Movie get(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Добавляет фильм, заменяя фильм с тем же id.
+     * @return новая версия
+     */
+    MovieStore put(Movie movie) {
+        Movie previous = byId.get(movie.getId());
+        Node tree = previous == null ? root : delete(root, previous, ORDER);
+        Node owners = previous == null ? byOwner : delete(byOwner, previous, OWNER_ORDER);
+        Node names = previous == null ? byName : delete(byName, previous, NAME_ORDER);
+        int priority = priority(movie.getId());
+        return new MovieStore(byId.put(movie.getId(), movie), insert(tree, movie, priority, ORDER),
+                insert(owners, movie, priority, OWNER_ORDER), insert(names, movie, priority, NAME_ORDER));
+    }
+
+    /**
+     * @return новая версия без фильма с id или эта же, если его нет
+     */
+    MovieStore remove(int id) {
+        Movie removed = byId.get(id);
+        if (removed == null) {
+            return this;
+        }
+        return new MovieStore(byId.remove(id), delete(root, removed, ORDER),
+                delete(byOwner, removed, OWNER_ORDER), delete(byName, removed, NAME_ORDER));
+    }
+
+    /**
+     * @return новая версия без фильмов пользователя или эта же, если у него их нет
+     */
+    MovieStore removeOwnedBy(String login) {
+        List<Movie> owned = new ArrayList<>();
+        ownedBy(login, null).forEach(owned::add);
+        MovieStore store = this;
+        for (Movie movie : owned) {
+            store = store.remove(movie.getId());
+        }
+        return store;
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    /**
+     * @return фильм, наибольший в естественном порядке, или null, если фильмов нет
+     */
+    Movie last() {
+        Node node = root;
+        if (node == null) {
+            return null;
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.movie;
+    }
+
+    /**
+     * @return все фильмы в порядке ORDER
+     */
+    Iterable<Movie> ordered() {
+        return () -> new InOrder(root, null, ORDER, null);
+    }
+
+    Stream<Movie> stream() {
+        return StreamSupport.stream(ordered().spliterator(), false);
+    }
+
+    /**
+     * @return фильмы после after в порядке ORDER
+     */
+    Iterable<Movie> after(Movie after) {
+        return () -> new InOrder(root, after, ORDER, null);
+    }
+
+    /**
+     * @return фильмы, строго большие movie в естественном порядке Movie
+     */
+    Iterable<Movie> greaterThan(Movie movie) {
+        // Образец с наибольшим id идет после всех фильмов с тем же ключом
+        return after(probe(null, movie.getOscarsCount(), movie.getUsaBoxOffice(), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Фильмы пользователя в порядке ORDER: спуск к первому из них и обход, пока не сменится владелец.
+     * @param login логин владельца
+     * @param after фильм, после которого начинать, или null, чтобы начать с первого фильма пользователя
+     */
+    Iterable<Movie> ownedBy(String login, Movie after) {
+        Movie bound = after == null
+                ? probe(login, Long.MIN_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE)
+                : probe(login, after.getOscarsCount(), after.getUsaBoxOffice(), after.getId());
+        return () -> new InOrder(byOwner, bound, OWNER_ORDER, movie -> login.equals(movie.getOwnerLogin()));
+    }
+
+    /**
+     * @return фильмы пользователя, строго большие movie в естественном порядке Movie
+     */
+    Iterable<Movie> ownedByGreaterThan(String login, Movie movie) {
+        return ownedBy(login, probe(login, movie.getOscarsCount(), movie.getUsaBoxOffice(), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Фильмы, название которых начинается с prefix, в порядке (name, id):
+     * спуск к первому названию не меньше prefix и обход, пока названия начинаются с него.
+     */
+    Iterable<Movie> nameStartsWith(String prefix) {
+        Movie bound = probe(null, 0, 0, Integer.MIN_VALUE);
+        bound.setName(prefix);
+        return () -> new InOrder(byName, bound, NAME_ORDER, movie -> movie.getName() != null && movie.getName().startsWith(prefix));
+    }
+
+    /**
+     * @return образец для поиска в индексах: фильм только с ключами сортировки
+     */
+    private static Movie probe(String login, long oscarsCount, long usaBoxOffice, int id) {
+        Movie probe = new Movie(id, null, null, oscarsCount, usaBoxOffice, null, null, null);
+        probe.setOwnerLogin(login);
+        return probe;
+    }
+
+    /**
+     * Приоритет узла в куче декартова дерева. Зависит только от id, поэтому форма дерева воспроизводима,
+     * а перемешивание делает последовательные id из sequence похожими на случайные приоритеты.
+     */
+    private static int priority(int id) {
+        int hash = id * 0x9E3779B9;
+        return hash ^ hash >>> 16;
+    }
+
+    private static Node insert(Node node, Movie movie, int priority, Comparator<Movie> order) {
+        if (node == null) {
+            return new Node(movie, priority, null, null);
+        }
+        if (priority > node.priority) {
+            return split(node, movie, priority, order);
+        }
+        return order.compare(movie, node.movie) < 0
+                ? new Node(node.movie, node.priority, insert(node.left, movie, priority, order), node.right)
+                : new Node(node.movie, node.priority, node.left, insert(node.right, movie, priority, order));
+    }
+
+    /**
+     * Делит поддерево по movie и ставит movie корнем над двумя частями.
+     */
+    private static Node split(Node node, Movie movie, int priority, Comparator<Movie> order) {
+        Node left = null;
+        Node right = null;
+        // Путь спуска запоминается, а обе части собираются снизу вверх копиями узлов пути
+        ArrayDeque<Node> lesser = new ArrayDeque<>();
+        ArrayDeque<Node> greater = new ArrayDeque<>();
+        while (node != null) {
+            if (order.compare(node.movie, movie) < 0) {
+                lesser.push(node);
+                node = node.right;
+            } else {
+                greater.push(node);
+                node = node.left;
+            }
+        }
+        while (!lesser.isEmpty()) {
+            Node parent = lesser.pop();
+            left = new Node(parent.movie, parent.priority, parent.left, left);
+        }
+        while (!greater.isEmpty()) {
+            Node parent = greater.pop();
+            right = new Node(parent.movie, parent.priority, right, parent.right);
+        }
+        return new Node(movie, priority, left, right);
+    }
+
+    /**
+     * Удаляет фильм, который точно есть в поддереве.
+     */
+    private static Node delete(Node node, Movie movie, Comparator<Movie> order) {
+        int compared = order.compare(movie, node.movie);
+        if (compared == 0) {
+            return merge(node.left, node.right);
+        }
+        return compared < 0
+                ? new Node(node.movie, node.priority, delete(node.left, movie, order), node.right)
+                : new Node(node.movie, node.priority, node.left, delete(node.right, movie, order));
+    }
+
+    /**
+     * Сливает два дерева, все элементы left меньше всех элементов right.
+     */
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        return left.priority >= right.priority
+                ? new Node(left.movie, left.priority, left.left, merge(left.right, right))
+                : new Node(right.movie, right.priority, merge(left, right.left), right.right);
+    }
+
+    private record Node(Movie movie, int priority, Node left, Node right) {
+    }
+
+    /**
+     * Обход дерева по возрастанию, начиная с первого элемента после bound.
+     * Если задано условие range, обход останавливается на первом фильме, который ему не подходит.
+     */
+    private static final class InOrder implements Iterator<Movie> {
+        private final ArrayDeque<Node> path = new ArrayDeque<>();
+        private final Movie bound;
+        private final Comparator<Movie> order;
+        private final Predicate<Movie> range;
+
+        private InOrder(Node root, Movie bound, Comparator<Movie> order, Predicate<Movie> range) {
+            this.bound = bound;
+            this.order = order;
+            this.range = range;
+            descend(root);
+        }
+
+        private void descend(Node node) {
+            while (node != null) {
+                if (bound != null && order.compare(node.movie, bound) <= 0) {
+                    node = node.right;
+                } else {
+                    path.push(node);
+                    node = node.left;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !path.isEmpty() && (range == null || range.test(path.peek().movie));
+        }
+
+        @Override
+        public Movie next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node node = path.pop();
+            descend(node.right);
+            return node.movie;
+        }
+    }
+}
@@ -17,13 +17,13 @@ public class PasswordHasher {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
             byte[] hashBytes = md.digest(input.getBytes(StandardCharsets.UTF_8));
-            log.info("Строка превращена в байты хешированием");
+            log.debug("Строка превращена в байты хешированием");
 
             StringBuilder sb = new StringBuilder();
             for (byte b : hashBytes) {
                 sb.append(String.format("%02x", b));
             }
-            log.info("Пароль отхэширован");
+            log.debug("Пароль отхэширован");
 
             return sb.toString();
         } catch (NoSuchAlgorithmException e) {
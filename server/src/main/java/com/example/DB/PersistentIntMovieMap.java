@@ -0,0 +1,119 @@
+package com.example.DB;
+
+import com.example.common.model.Movie;
+
+/**
+ * Неизменяемый индекс фильмов по id: префиксное дерево по битам id с ветвлением 32.
+ * Изменение возвращает новую версию, которая копирует только путь от корня до листа (не больше 7 узлов),
+ * остальные узлы общие со старой версией, поэтому старые версии можно читать без блокировок.
+ * Узлы хранят только занятые ветви, отмеченные битовой маской.
+ */
+final class PersistentIntMovieMap {
+    static final PersistentIntMovieMap EMPTY = new PersistentIntMovieMap(null, 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    /**
+     * Сдвиг верхнего уровня: 32 бита id делятся на уровни по 5 бит, сверху остаются 2.
+     */
+    private static final int TOP_SHIFT = 30;
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMovieMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @return фильм с id или null
+     */
+    Movie get(int id) {
+        Node node = root;
+        for (int shift = TOP_SHIFT; node != null; shift -= BITS) {
+            int bit = 1 << (id >>> shift & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object child = node.children[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (shift == 0) {
+                return (Movie) child;
+            }
+            node = (Node) child;
+        }
+        return null;
+    }
+
+    /**
+     * @return версия, в которой под id лежит movie
+     */
+    PersistentIntMovieMap put(int id, Movie movie) {
+        int newSize = get(id) == null ? size + 1 : size;
+        return new PersistentIntMovieMap(put(root, TOP_SHIFT, id, movie), newSize);
+    }
+
+    /**
+     * @return версия без id или эта же, если id нет
+     */
+    PersistentIntMovieMap remove(int id) {
+        if (get(id) == null) {
+            return this;
+        }
+        return new PersistentIntMovieMap(remove(root, TOP_SHIFT, id), size - 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static Node put(Node node, int shift, int id, Movie movie) {
+        int bit = 1 << (id >>> shift & MASK);
+        int bitmap = node == null ? 0 : node.bitmap;
+        int index = Integer.bitCount(bitmap & (bit - 1));
+        if ((bitmap & bit) != 0) {
+            Object child = node.children[index];
+            Object[] children = node.children.clone();
+            children[index] = shift == 0 ? movie : put((Node) child, shift - BITS, id, movie);
+            return new Node(bitmap, children);
+        }
+        int length = node == null ? 0 : node.children.length;
+        Object[] children = new Object[length + 1];
+        if (node != null) {
+            System.arraycopy(node.children, 0, children, 0, index);
+            System.arraycopy(node.children, index, children, index + 1, length - index);
+        }
+        children[index] = shift == 0 ? movie : put(null, shift - BITS, id, movie);
+        return new Node(bitmap | bit, children);
+    }
+
+    /**
+     * Удаляет id, который точно есть в поддереве.
+     * @return новый узел или null, если узел опустел
+     */
+    private static Node remove(Node node, int shift, int id) {
+        int bit = 1 << (id >>> shift & MASK);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        if (shift != 0) {
+            Node child = remove((Node) node.children[index], shift - BITS, id);
+            if (child != null) {
+                Object[] children = node.children.clone();
+                children[index] = child;
+                return new Node(node.bitmap, children);
+            }
+        }
+        if (node.bitmap == bit) {
+            return null;
+        }
+        Object[] children = new Object[node.children.length - 1];
+        System.arraycopy(node.children, 0, children, 0, index);
+        System.arraycopy(node.children, index + 1, children, index, children.length - index);
+        return new Node(node.bitmap & ~bit, children);
+    }
+
+    /**
+     * Узел дерева: на нижнем уровне children - фильмы, на остальных - узлы следующего уровня.
+     */
+    private record Node(int bitmap, Object[] children) {
+    }
+}
@@ -4,12 +4,15 @@ import com.example.common.model.*;
 import lombok.extern.log4j.Log4j2;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
 
 /**
  * Хранит копию бдшки.
@@ -17,62 +20,126 @@ import java.util.stream.Collectors;
  * Содержит методы для изменения бдшки и синхронизации с коллекцией.
  * Содержит метод для аутентификации.
  * Методы, изменяющие бдшку, используют синхронизацию чтения и записи.
+ * Коллекция - неизменяемая версия MovieStore с индексом по id и индексом, упорядоченным по ключу сортировки и id,
+ * поэтому поиск, обновление и удаление по id не обходят всю коллекцию,
+ * а фильмы с одинаковым ключом сортировки не теряются.
+ * Пишущий поток под блокировкой бд публикует новую версию через AtomicReference,
+ * а читатели без блокировок обходят ту версию, которую застали, и не ждут ни записи, ни запросов к бд.
+ * Фильмы одного пользователя берутся из индекса по владельцу, а не фильтрацией всей коллекции.
+ * Логины владельцев интернируются, поэтому все фильмы пользователя ссылаются на одну строку.
  */
 @Log4j2
 public class TreeSetCollectionManager implements CollectionManager{
-    private TreeSet<Movie> collection;
+    private final AtomicReference<MovieStore> collection = new AtomicReference<>(MovieStore.EMPTY);
     private Connection connection;
 
     private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentHashMap<String, String> logins = new ConcurrentHashMap<>();
+    /**
+     * Пароли пользователей, которые уже подтвердили логин и пароль, по логину.
+     * Хранится сам пароль, как он приходит в каждом запросе, чтобы проверка в потоке чтения
+     * сводилась к сравнению строк, а не к хэшированию на каждый пакет.
+     */
+    private final ConcurrentHashMap<String, String> verifiedPasswords = new ConcurrentHashMap<>();
 
-    public TreeSetCollectionManager(TreeSet<Movie> collection, Connection connection){ // poamotret
-        this.collection = collection;
+    public TreeSetCollectionManager(Collection<Movie> collection, Connection connection){ // poamotret
         this.connection = connection;
+        MovieStore store = MovieStore.EMPTY;
+        for (Movie movie : collection) {
+            movie.setOwnerLogin(intern(movie.getOwnerLogin()));
+            store = store.put(movie);
+        }
+        this.collection.set(store);
+    }
+
+    /**
+     * @return тот же логин, общий для всех фильмов пользователя
+     */
+    private String intern(String login) {
+        return login == null ? null : logins.computeIfAbsent(login, key -> key);
     }
 
     public String getInfoAboutCollection() {
-        return "Тип данных: " + collection.getClass().getName() + "\n"
-                + "Количество элементов: " + collection.size();
+        return "Тип данных: " + MovieStore.class.getName() + "\n"
+                + "Количество элементов: " + getCollectionSize();
     }
 
     @Override
     public Movie getElemById(int id) {
-        return collection.stream()
-            .filter(movie -> movie.getId() == id)
-            .findAny().orElse(null);
+        return collection.get().get(id);
     }
 
 
     @Override
     public int getCollectionSize(){
-        return collection.size();
+        return collection.get().size();
     }
 
 
+    /**
+     * Возвращает копию текущей версии коллекции, которую вызывающий может менять как угодно.
+     * @return копия коллекции
+     */
     @Override
     public TreeSet<Movie> getCollection(){
-        return collection;
+        TreeSet<Movie> copy = new TreeSet<>(MovieStore.ORDER);
+        collection.get().ordered().forEach(copy::add);
+        return copy;
+    }
+
+    /**
+     * Обходит только нужную страницу одной версии коллекции, не копируя коллекцию целиком.
+     */
+    @Override
+    public List<Movie> getPage(Movie after, int limit) {
+        MovieStore store = collection.get();
+        List<Movie> page = new ArrayList<>(Math.min(limit, store.size()));
+        for (Movie movie : after == null ? store.ordered() : store.after(after)) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(movie);
+        }
+        return page;
+    }
+
+    /**
+     * Обходит только фильмы пользователя из индекса по владельцу.
+     */
+    @Override
+    public List<Movie> getPageOfOwner(String login, Movie after, int limit) {
+        List<Movie> page = new ArrayList<>();
+        for (Movie movie : collection.get().ownedBy(login, after)) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(movie);
+        }
+        return page;
     }
 
     @Override
     public Movie getElemWithMinCreationDate() {
-        return collection.stream()
+        return collection.get().stream()
                 .min(Comparator.comparing(Movie::getCreationDate))
                 .orElse(null);
     }
 
     @Override
     public Movie getElemWithMaxId() {
-        return collection.stream()
+        return collection.get().stream()
                 .max(Comparator.comparing(Movie::getId))
                 .orElse(null);
     }
 
-    public TreeSet<Movie> getElemsWithMatchName(String filter){
-        TreeSet<Movie> result = new TreeSet<>(collection.comparator());
-        collection.stream()
-            .filter(m -> m.getName().startsWith(filter))
-            .forEach(m -> result.add(m));
+    /**
+     * Берет из индекса по названию только подходящие фильмы.
+     * @return фильмы, название которых начинается с filter, по названию, а при равных названиях - по id
+     */
+    @Override
+    public List<Movie> getElemsWithMatchName(String filter){
+        List<Movie> result = new ArrayList<>();
+        collection.get().nameStartsWith(filter).forEach(result::add);
         return result;
     }
 
@@ -104,7 +171,8 @@ public class TreeSetCollectionManager implements CollectionManager{
                 log.info("Элемент успешно добавлен в бд");
                 if (rs.next()) {
                     movie.setId(rs.getInt("id"));
-                    collection.add(movie);
+                    movie.setOwnerLogin(intern(movie.getOwnerLogin()));
+                    collection.updateAndGet(store -> store.put(movie));
                     log.info("Элемент успешно добавлен в коллекцию");
                 }
             }
@@ -143,15 +211,14 @@ public class TreeSetCollectionManager implements CollectionManager{
 
             if (affectedRows > 0) {
                 log.info("Элемент с id={} успешно обновлен в бд", id);
-                Movie oldMovie = collection.stream()
-                        .filter(movie -> movie.getId() == id)
-                        .findFirst()
-                        .orElse(null);
-
+                Movie oldMovie = collection.get().get(id);
                 if (oldMovie != null) {
-                    collection.remove(oldMovie);
                     newMovie.setId(id);
-                    collection.add(newMovie);
+                    newMovie.setOwnerLogin(intern(newMovie.getOwnerLogin()));
+                    collection.updateAndGet(store -> store.put(newMovie));
+                }
+
+                if (oldMovie != null) {
                     log.info("Элемент с id={} успешно обновлен в коллекции", id);
                 } else {
                     log.error("Элемент с id={}не найден в коллекции", id);
@@ -183,9 +250,9 @@ public class TreeSetCollectionManager implements CollectionManager{
             pstmt.executeUpdate();
             log.info("Элемент в id={} удален из бд", id);
 
-            Movie movie = getElemById(id);
+            Movie movie = collection.get().get(id);
             if (movie != null) {
-                collection.remove(movie);
+                collection.updateAndGet(store -> store.remove(id));
                 log.info("Элемент в id={} удален из коллекции", id);
             }
         } catch (SQLException e) {
@@ -207,12 +274,10 @@ public class TreeSetCollectionManager implements CollectionManager{
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, login);
-            pstmt.executeUpdate(sql);
+            pstmt.executeUpdate();
             log.info("Элементы с владельцем {} успешно удалены из бдшки", login);
 
-            collection.removeIf(movie -> {
-                return movie.getOwnerLogin().equals(login);
-            });
+            collection.updateAndGet(store -> store.removeOwnedBy(login));
             log.info("Элементы с владельцем {} успешно удалены из коллекции", login);
         } catch (SQLException e) {
             log.error("Ошибка очистки коллекции: {} ",e.getMessage());
@@ -222,15 +287,15 @@ public class TreeSetCollectionManager implements CollectionManager{
     }
 
     /**
-     * Добавляет элемент в бд и коллекцию, если он максимальный.
+     * Добавляет элемент в бд и коллекцию, если он больше наибольшего элемента коллекции.
      * Использует метод addElem(Movie movie).
      * @param maxMovie проверяемый элемент
      * @return результат добавления
      */
     @Override
     public boolean addElemIfMax(Movie maxMovie){
-        boolean ans =  collection.stream()
-                .filter(m -> m.compareTo(maxMovie) > 0).findAny().isPresent();
+        Movie max = collection.get().last();
+        boolean ans = max == null || maxMovie.compareTo(max) > 0;
         if (ans) {
             addElem(maxMovie);
         } else {
@@ -242,16 +307,17 @@ public class TreeSetCollectionManager implements CollectionManager{
     /**
      * Удаляет элементы, большие заданного.
      * Использует removeElemById.
-     * Производит поиск удаляемых элементов по коллекции.
+     * Удаляемые элементы берутся из индекса по владельцу, без обхода чужих фильмов.
      * @param movie элемент для сравнения
      * @return
      */
     public int removeGreaterElements(Movie movie) {
-        List<Integer> idsToDelete = collection.stream()
-                .filter(m -> m.compareTo(movie) > 0)  // По условию сравнения
-                .filter(m -> m.getOwnerLogin() != null && m.getOwnerLogin().equals(movie.getOwnerLogin()))  // Проверка прав
-                .map(Movie::getId)
-                .collect(Collectors.toList());
+        List<Integer> idsToDelete = new ArrayList<>();
+        if (movie.getOwnerLogin() != null) {  // Проверка прав: только фильмы владельца
+            for (Movie m : collection.get().ownedByGreaterThan(movie.getOwnerLogin(), movie)) {
+                idsToDelete.add(m.getId());
+            }
+        }
         log.info("Получен список элементов пользователя, больших заданного");
 
         int deletedCount = 0;
@@ -377,7 +443,11 @@ public class TreeSetCollectionManager implements CollectionManager{
                     if (rs.next()) {
                         String storedPassword = rs.getString("password");
                         log.info("Пользователь идентефицирован");
-                        return storedPassword.equals(hashedPassword);
+                        if (storedPassword.equals(hashedPassword)) {
+                            verifiedPasswords.put(login, password);
+                            return true;
+                        }
+                        return false;
                     }
                 }
             }
@@ -388,6 +458,7 @@ public class TreeSetCollectionManager implements CollectionManager{
                 stmt.setString(2, hashedPassword);
                 stmt.executeUpdate();
                 log.info("Пользователь успешно добавлен");
+                verifiedPasswords.put(login, password);
                 return true;
             }
         } catch (SQLException e) {
@@ -399,12 +470,61 @@ public class TreeSetCollectionManager implements CollectionManager{
 
     }
 
+    /**
+     * Проверяет логин и пароль только по памяти, без запроса к бд и без хэширования,
+     * поэтому годится для потока чтения.
+     * @param login логин пользователя
+     * @param password пароль пользователя
+     * @return true, если пользователь уже аутентифицировался с этим паролем
+     */
+    public boolean isVerified(String login, String password) {
+        if (login == null || password == null) {
+            return false;
+        }
+        return password.equals(verifiedPasswords.get(login));
+    }
+
+    /**
+     * Проверяет логин и пароль: сначала по памяти, затем по бд. В отличие от authenticate,
+     * неизвестный логин не регистрирует.
+     * @param login логин пользователя
+     * @param password пароль пользователя
+     * @return true, если пользователь существует и пароль верен
+     */
+    public boolean checkCredentials(String login, String password) {
+        if (login == null || password == null) {
+            return false;
+        }
+        if (isVerified(login, password)) {
+            return true;
+        }
+        String hashedPassword = PasswordHasher.sha1(password);
+        String sql = "SELECT password FROM users WHERE login = ?";
+        lock.lock();
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, login);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getString("password").equals(hashedPassword)) {
+                    verifiedPasswords.put(login, password);
+                    return true;
+                }
+                return false;
+            }
+        } catch (SQLException e) {
+            log.error("Ошибка при проверке пользователя: {}", e.getMessage());
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Синхронизирует коллекцию с бдшкой в начале работы.
      * Полностью очищает коллекцию и добавляет все элементы из бдшки.
      */
     public void fullSynchronization() {
-        collection.clear();
+        collection.set(MovieStore.EMPTY);
         String sql = "SELECT * FROM movies";
         lock.lock();
 
@@ -2,19 +2,38 @@ package com.example;
 
 import com.example.DB.*;
 import com.example.commands.Add;
+import com.example.commands.Authenticate;
+import com.example.commands.Show;
+import com.example.commands.ShowMine;
+import com.example.commands.Stats;
 import com.example.common.network.*;
 import com.example.common.command.*;
-import com.example.common.network.serializer.NetworkSerializer;
+import com.example.common.network.serializer.SerializeException;
+import com.example.metrics.LatencyHistogram;
+import com.example.metrics.ServerMetrics;
+import com.example.pipeline.AdmissionController;
+import com.example.pipeline.PriorityLanes;
+import com.example.pipeline.RateLimiter;
+import com.example.pipeline.StageQueue;
 import lombok.extern.log4j.Log4j2;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.sql.Connection;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.TreeSet;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToLongFunction;
 
 
 /**
@@ -24,19 +43,52 @@ import java.util.concurrent.*;
 @Log4j2
 public class Server {
     private final int port;
-    private final ExecutorService readPool = Executors.newFixedThreadPool(1);
+    private final ServerConfig config;
+    private final List<UDPManager> udpManagers = new ArrayList<>();
     private final ExecutorService processPool = Executors.newCachedThreadPool();
     private final ExecutorService sendPool = Executors.newFixedThreadPool(1);
-    private final BlockingQueue<RequestTask> requestQueue = new LinkedBlockingQueue<>();
-    private final BlockingQueue<ResponseTask> responseQueue = new LinkedBlockingQueue<>();
+    private final StageQueue<RequestTask> requestQueue;
+    private final StageQueue<ResponseTask> responseQueue;
+    private final AdmissionController<RequestTask> admission;
+    private final RateLimiter<InetSocketAddress> addressLimiter;
+    private final RateLimiter<String> loginLimiter;
+    private final BufferPool bufferPool;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final List<Selector> selectors = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService maintenancePool = Executors.newSingleThreadScheduledExecutor();
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final LatencyHistogram queueWaitTime = metrics.histogram("stage.requestQueue");
+    private final LatencyHistogram executeTime = metrics.histogram("stage.execute");
+    private final LatencyHistogram responseWaitTime = metrics.histogram("stage.responseQueue");
+    private final LatencyHistogram sendTime = metrics.histogram("stage.send");
+    private final LatencyHistogram fastPathTime = metrics.histogram("fastPath");
+    private final LatencyHistogram endToEndTime = metrics.histogram("endToEnd");
 
     private DBConnector dbConnector;
     private CommandManager commandManager;
     private TreeSetCollectionManager collectionManager;
-    private UDPManager udpManager;
+    private ExecutorService readPool;
 
     public Server(int port) {
+        this(port, new ServerConfig());
+    }
+
+    public Server(int port, ServerConfig config) {
         this.port = port;
+        this.config = config;
+        this.requestQueue = config.isPriorityLanes()
+                ? new PriorityLanes<>(RequestTask::commandClass, config.getLaneWeights(),
+                        config.getQueueType(), config.getQueueCapacity(), config.getWaitStrategy())
+                : config.getQueueType().create(config.getQueueCapacity(), config.getWaitStrategy());
+        this.responseQueue = config.getQueueType().create(config.getQueueCapacity(), config.getWaitStrategy());
+        this.admission = new AdmissionController<>(requestQueue, config.getOverloadPolicy(),
+                RequestTask::commandClass,
+                config.getSheddableClasses(), config.getShedThreshold(), this::sendBusy);
+        this.addressLimiter = new RateLimiter<>(config.getClientRateLimit(), config.getClientBurst(),
+                config.getRateLimiterMaxEntries(), config.getRateLimiterIdleSeconds(), TimeUnit.SECONDS);
+        this.loginLimiter = new RateLimiter<>(config.getUserRateLimit(), config.getUserBurst(),
+                config.getRateLimiterMaxEntries(), config.getRateLimiterIdleSeconds(), TimeUnit.SECONDS);
+        this.bufferPool = new BufferPool(NetworkPacket.MAX_DATAGRAM_SIZE, config.getBufferPoolSize());
         this.dbConnector = new DBConnector();
     }
 
@@ -56,86 +108,467 @@ public class Server {
             this.commandManager = new CommandManager(new HashMap<>(), new ArrayDeque<>());
             addCommand();
 
-            DatagramChannel datagramChannel = DatagramChannel.open();
-            datagramChannel.bind(new InetSocketAddress(port));
-            datagramChannel.configureBlocking(false);
-            log.info("Сервер запущен на порту {}", port);
-
-            this.udpManager = new UDPManager(datagramChannel, new NetworkSerializer(), new NetworkObjectBuilder());
+            int shards = resolveIngressShards();
+            for (int i = 0; i < shards; i++) {
+                DatagramChannel datagramChannel = openChannel(shards > 1);
+                UDPManager shard = new UDPManager(datagramChannel, new NetworkObjectBuilder(bufferPool,
+                        config.getReassemblyMaxBytes(), config.getReassemblyTimeoutMillis(), TimeUnit.MILLISECONDS));
+                shard.setCodec(config.getCodec().codec());
+                shard.setFragmentSize(config.getFragmentSize());
+                if (config.isMtuProbing()) {
+                    shard.enableMtuProbing();
+                }
+                if (config.isCompression()) {
+                    shard.enableCompression(new PayloadCompressor(config.getCompressionThreshold(), config.getCompressionLevel()));
+                }
+                if (config.isReliableDelivery()) {
+                    shard.enableReliableDelivery(new SendWindow(config.getSendWindow(),
+                            config.getRetransmitTimeoutMillis(), config.getMaxRetransmits(), TimeUnit.MILLISECONDS));
+                }
+                udpManagers.add(shard);
+            }
+            log.info("Сервер запущен на порту {}, каналов приема: {}", port, shards);
+            running.set(true);
+            startMetrics();
+            // Таймеры надежной доставки и чистка сборщиков; на простаивающем шарде старые куски иначе не уйдут.
+            maintenancePool.scheduleAtFixedRate(() -> udpManagers.forEach(UDPManager::tick),
+                    config.getReliabilityTickMillis(), config.getReliabilityTickMillis(), TimeUnit.MILLISECONDS);
 
-            readPool.submit(this::readRequests);
-            processPool.submit(this::processRequests);
+            this.readPool = Executors.newFixedThreadPool(shards);
+            for (UDPManager shard : udpManagers) {
+                if (config.isReactorMode()) {
+                    readPool.submit(() -> reactRequests(shard));
+                } else {
+                    readPool.submit(() -> readRequests(shard));
+                }
+            }
+            for (int i = 0; i < Math.max(1, config.getRequestWorkers()); i++) {
+                processPool.submit(this::processRequests);
+            }
             sendPool.submit(this::sendResponses);
 
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                log.info("Остановка сервера...");
-                readPool.shutdown();
-                processPool.shutdown();
-                sendPool.shutdown();
-                dbConnector.disconnect();
-                try {
-                    if (datagramChannel.isOpen()) {
-                        datagramChannel.close();
-                    }
-                } catch (IOException e) {
-                    log.error("Ошибка при закрытии канала: {}", e.getMessage());
-                }
-            }));
+            Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
         } catch (IOException e) {
             log.error("Ошибка при запуске сервера: {}", e.getMessage());
         }
     }
 
+    /**
+     * Останавливает сервер, не теряя уже принятые запросы.
+     * Сначала перестает читать новые датаграммы, затем в пределах shutdownDrainMillis
+     * дожидается выполнения запросов из очереди, отправки всех готовых ответов и их подтверждения,
+     * и только после этого закрывает бд и каналы. Таймеры повторов останавливаются последними.
+     * Запросы, которые не успели выполниться, получают ответ с ошибкой, чтобы клиент не ждал таймаута.
+     */
+    public void stop() {
+        if (!running.getAndSet(false)) {
+            return;
+        }
+        log.info("Остановка сервера...");
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getShutdownDrainMillis());
+
+        // Потоки чтения не прерываются: прерывание во время чтения закрыло бы канал, нужный для отправки ответов
+        selectors.forEach(Selector::wakeup);
+        readPool.shutdown();
+        awaitTermination(readPool, deadline);
+
+        admission.awaitIdle(deadline);
+        processPool.shutdownNow();
+        awaitTermination(processPool, deadline);
+        RequestTask unprocessed;
+        while ((unprocessed = requestQueue.poll()) != null) {
+            admission.complete();
+            sendError(unprocessed, "Сервер остановлен, запрос не выполнен");
+        }
+
+        // Ответы уходят по порядку, поэтому метка конца очереди гарантирует, что все ответы до нее отправлены
+        while (!responseQueue.offer(END_OF_RESPONSES) && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        sendPool.shutdown();
+        if (!awaitTermination(sendPool, deadline)) {
+            log.warn("Не все ответы отправлены до истечения времени остановки, осталось {}", responseQueue.size());
+            sendPool.shutdownNow();
+        }
+        awaitAcknowledgements(deadline);
+        maintenancePool.shutdownNow();
+
+        dbConnector.disconnect();
+        for (UDPManager shard : udpManagers) {
+            try {
+                if (shard.getChannel().isOpen()) {
+                    shard.getChannel().close();
+                }
+            } catch (IOException e) {
+                log.error("Ошибка при закрытии канала: {}", e.getMessage());
+            }
+        }
+        log.info("Сервер остановлен. Итоговые метрики:\n{}", metrics.report());
+    }
+
+    /**
+     * Регистрирует метрики очередей, каналов и ограничителей
+     * и запускает пересчет частот раз в секунду и периодический вывод отчета в лог.
+     */
+    private void startMetrics() {
+        metrics.gauge("requestQueue.depth", requestQueue::size);
+        if (requestQueue instanceof PriorityLanes<RequestTask> lanes) {
+            for (CommandClass commandClass : CommandClass.values()) {
+                metrics.gauge("requestQueue.lane." + commandClass.name().toLowerCase(), () -> lanes.size(commandClass));
+            }
+        }
+        metrics.gauge("responseQueue.depth", responseQueue::size);
+        metrics.gauge("requests.inFlight", admission::getInFlight);
+        metrics.gauge("admission.admitted", admission::getAdmitted);
+        metrics.gauge("admission.rejected", admission::getRejected);
+        metrics.gauge("admission.droppedOldest", admission::getDroppedOldest);
+        metrics.gauge("admission.shedByClass", admission::getShedByClass);
+        metrics.gauge("rateLimit.address.limited", addressLimiter::getLimited);
+        metrics.gauge("rateLimit.login.limited", loginLimiter::getLimited);
+        metrics.gauge("reassembly.pending", () -> sumOverShards(shard -> shard.getBuilder().getPendingMessages()));
+        metrics.gauge("reassembly.bufferedBytes", () -> sumOverShards(shard -> shard.getBuilder().getBufferedBytes()));
+        metrics.gauge("reassembly.duplicates", () -> sumOverShards(shard -> shard.getBuilder().getDuplicateFragments()));
+        metrics.gauge("reassembly.expired", () -> sumOverShards(shard -> shard.getBuilder().getExpiredMessages()));
+        metrics.gauge("reassembly.evicted", () -> sumOverShards(shard -> shard.getBuilder().getEvictedMessages()));
+        metrics.rate("udp.datagramsReceived", () -> sumOverShards(UDPManager::getDatagramsReceived));
+        metrics.rate("udp.datagramsSent", () -> sumOverShards(UDPManager::getDatagramsSent));
+        metrics.gauge("udp.datagramsDropped", () -> sumOverShards(UDPManager::getDatagramsDropped));
+        metrics.rate("reassembly.fragments", () -> sumOverShards(shard -> shard.getBuilder().getFragmentsReceived()));
+        metrics.rate("messages.received", () -> sumOverShards(shard -> shard.getBuilder().getMessagesAssembled()));
+        metrics.rate("messages.sent", () -> sumOverShards(UDPManager::getMessagesSent));
+        metrics.rate("reliability.retransmitted", () -> sumOverShards(UDPManager::getFragmentsRetransmitted));
+        metrics.gauge("reliability.nacksSent", () -> sumOverShards(UDPManager::getNacksSent));
+        metrics.gauge("reliability.nacksReceived", () -> sumOverShards(UDPManager::getNacksReceived));
+        metrics.gauge("udp.probesSent", () -> sumOverShards(UDPManager::getProbesSent));
+        metrics.gauge("reliability.unacked", () -> sumOverShards(shard ->
+                shard.getSendWindow() == null ? 0 : shard.getSendWindow().getOutstanding()));
+        metrics.gauge("reliability.abandoned", () -> sumOverShards(shard ->
+                shard.getSendWindow() == null ? 0 : shard.getSendWindow().getAbandoned()));
+        metrics.gauge("compression.messages", () -> sumOverCompressors(PayloadCompressor::getMessagesCompressed));
+        metrics.gauge("compression.incompressible", () -> sumOverCompressors(PayloadCompressor::getMessagesIncompressible));
+        metrics.gauge("compression.ratioPercent", () -> {
+            long before = sumOverCompressors(PayloadCompressor::getBytesBefore);
+            return before == 0 ? 0 : sumOverCompressors(PayloadCompressor::getBytesAfter) * 100 / before;
+        });
+        metrics.rate("compression.cpuMicros", () -> sumOverCompressors(PayloadCompressor::getCompressNanos) / 1_000);
+        metrics.rate("bufferPool.hits", bufferPool::getHits);
+        metrics.rate("bufferPool.misses", bufferPool::getMisses);
+        metrics.gauge("bufferPool.discarded", bufferPool::getDiscarded);
+        metrics.gauge("bufferPool.free", bufferPool::getPooled);
+
+        maintenancePool.scheduleAtFixedRate(metrics::sampleRates, 1, 1, TimeUnit.SECONDS);
+        if (config.getMetricsLogSeconds() > 0) {
+            maintenancePool.scheduleAtFixedRate(() -> log.info("Метрики сервера:\n{}", metrics.report()),
+                    config.getMetricsLogSeconds(), config.getMetricsLogSeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    private long sumOverShards(ToLongFunction<UDPManager> counter) {
+        long sum = 0;
+        for (UDPManager shard : udpManagers) {
+            sum += counter.applyAsLong(shard);
+        }
+        return sum;
+    }
+
+    private long sumOverCompressors(ToLongFunction<PayloadCompressor> counter) {
+        return sumOverShards(shard -> shard.getCompressor() == null ? 0 : counter.applyAsLong(shard.getCompressor()));
+    }
+
+    /**
+     * Дожидается, пока окна отправки опустеют: ответы подтверждены или исчерпали повторы.
+     * Подтверждения приходят теми же каналами, а потоки чтения уже остановлены, поэтому датаграммы
+     * вычитываются здесь, и новые запросы получают отказ. Повторы отправляют тики maintenancePool.
+     * @param deadline момент System.nanoTime(), после которого ждать больше нельзя
+     */
+    private void awaitAcknowledgements(long deadline) {
+        while (sumOverShards(shard -> shard.getSendWindow() == null ? 0 : shard.getSendWindow().getOutstanding()) > 0
+                && System.nanoTime() < deadline) {
+            // Поток чтения, не успевший завершиться, еще владеет буфером канала
+            if (readPool.isTerminated()) {
+                for (UDPManager shard : udpManagers) {
+                    try {
+                        shard.drain(request -> sendError(new RequestTask(request.object(), request.address(), shard,
+                                commandManager.getCommandClass(request.object().command()), System.nanoTime()),
+                                "Сервер остановлен, запрос не выполнен"));
+                    } catch (IOException e) {
+                        log.error("Ошибка чтения подтверждений при остановке: {}", e.getMessage());
+                    }
+                }
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    private boolean awaitTermination(ExecutorService pool, long deadline) {
+        try {
+            return pool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Определяет число каналов приема.
+     * Несколько каналов на одном порту возможны только при поддержке SO_REUSEPORT,
+     * иначе сервер откатывается к одному каналу.
+     */
+    private int resolveIngressShards() throws IOException {
+        int shards = Math.max(1, config.getIngressShards());
+        if (shards == 1) {
+            return 1;
+        }
+        try (DatagramChannel probe = DatagramChannel.open()) {
+            if (!probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                log.warn("SO_REUSEPORT не поддерживается платформой, используется один канал приема");
+                return 1;
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Открывает неблокирующий канал на порту сервера.
+     * При шардировании ядро само распределяет датаграммы между каналами по адресу отправителя,
+     * поэтому все фрагменты одного клиента попадают в один и тот же сборщик.
+     * @param reusePort разрешить нескольким каналам слушать один порт
+     */
+    private DatagramChannel openChannel(boolean reusePort) throws IOException {
+        DatagramChannel datagramChannel = DatagramChannel.open();
+        if (reusePort) {
+            datagramChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        datagramChannel.bind(new InetSocketAddress(port));
+        datagramChannel.configureBlocking(false);
+        return datagramChannel;
+    }
+
     /**
      * Поток для чтения запросов. Читает UDP пакеты через UDPManager,
      * собирает их и помещает готовые NetworkObject в очередь.
+     * @param udpManager канал приема, который обслуживает поток
      */
-    private void readRequests() {
+    private void readRequests(UDPManager udpManager) {
         try {
-            while (!Thread.currentThread().isInterrupted()) {
-                ReceiveObject request = udpManager.receive();
-                if (request != null) {
-                    requestQueue.put(new RequestTask(request.object(), request.address()));
+            while (running.get() && !Thread.currentThread().isInterrupted()) {
+                try {
+                    ReceiveObject request = udpManager.receive();
+                    if (request != null && request.object() != null) {
+                        dispatchRequest(request, udpManager);
+                    }
+                } catch (SerializeException e) {
+                    // Битая датаграмма не должна останавливать поток чтения
+                    log.debug("Датаграмма отброшена: {}", e.getMessage());
                 }
             }
-        } catch (IOException | ClassNotFoundException | InterruptedException e) {
+        } catch (IOException | ClassNotFoundException e) {
             log.error("Ошибка в потоке чтения запросов: {}", e.getMessage());
         }
     }
 
+    /**
+     * Поток чтения в режиме реактора.
+     * Блокируется на Selector до готовности канала к чтению,
+     * за одно пробуждение вычитывает все пришедшие датаграммы
+     * и кладет собранные NetworkObject в очередь обработки.
+     * @param udpManager канал приема, который обслуживает поток
+     */
+    private void reactRequests(UDPManager udpManager) {
+        try (Selector selector = Selector.open()) {
+            udpManager.getChannel().register(selector, SelectionKey.OP_READ);
+            selectors.add(selector);
+            while (running.get() && !Thread.currentThread().isInterrupted()) {
+                if (selector.select() == 0) {
+                    continue;
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        udpManager.drain(request -> dispatchRequest(request, udpManager));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.error("Ошибка в потоке чтения запросов: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Передает собранный запрос на выполнение.
+     * Сначала проверяет лимиты частоты запросов для адреса и логина клиента.
+     * В режиме runToCompletion дешевые неблокирующие команды выполняются и отправляются
+     * прямо в потоке чтения, минуя обе очереди. Остальные команды идут в очередь обработки.
+     * @param request собранный запрос и адрес клиента
+     * @param udpManager канал, которым был принят запрос
+     */
+    private void dispatchRequest(ReceiveObject request, UDPManager udpManager) {
+        NetworkObject object = request.object();
+        RequestTask task = new RequestTask(object, request.address(), udpManager,
+                commandManager.getCommandClass(object.command()), System.nanoTime());
+        boolean verified = collectionManager.isVerified(object.userLogin(), object.userPassword());
+        if (!isWithinRateLimit(task, verified)) {
+            sendError(task, "Слишком много запросов, повторите позже");
+            return;
+        }
+        // Команду с аутентификацией поток чтения выполняет, только если пароль проверяется по памяти,
+        // иначе проверка по бд выполняется в очереди обработки
+        if (config.isRunToCompletion() && commandManager.isNonBlocking(object.command())
+                && (verified || !commandManager.requiresAuthentication(object.command()))
+                && isAdminAllowed(object)) {
+            NetworkObject response = commandManager.executeCommand(object);
+            try {
+                udpManager.send(response, request.address());
+            } catch (IOException e) {
+                log.error("Ошибка отправки ответа на {}: {}", request.address(), e.getMessage());
+            }
+            long elapsed = System.nanoTime() - task.receivedNanos();
+            fastPathTime.record(elapsed);
+            endToEndTime.record(elapsed);
+            return;
+        }
+        admission.admit(task);
+    }
+
+    /**
+     * Проверяет лимиты частоты запросов: отдельно для адреса клиента и для логина пользователя.
+     * Лимит логина применяется, только если пароль к нему уже подтвержден: иначе по чужому логину
+     * можно было бы исчерпать его лимит, а сменой логинов - обойти свой. Такие запросы
+     * ограничиваются только по адресу. Лимит с неположительной частотой отключен.
+     * @param task запрос
+     * @param verified подтвержден ли логин запроса паролем
+     * @return true, если запрос укладывается в оба лимита
+     */
+    private boolean isWithinRateLimit(RequestTask task, boolean verified) {
+        if (config.getClientRateLimit() > 0 && !addressLimiter.tryAcquire(task.clientAddress())) {
+            return false;
+        }
+        return config.getUserRateLimit() <= 0 || !verified || loginLimiter.tryAcquire(task.request().userLogin());
+    }
+
+    /**
+     * Отвечает клиенту, что его запрос сброшен из-за перегрузки.
+     * @param task сброшенный запрос
+     */
+    private void sendBusy(RequestTask task) {
+        sendError(task, "Сервер перегружен, повторите запрос позже");
+    }
+
+    /**
+     * Отправляет клиенту ответ с ошибкой на запрос, который не будет выполнен.
+     * Ответ уходит сразу из текущего потока, минуя очередь ответов, которая может быть заполнена.
+     * @param task отклоненный запрос
+     * @param message текст ошибки
+     */
+    private void sendError(RequestTask task, String message) {
+        NetworkObject request = task.request();
+        NetworkObject response = new NetworkObject(request.id(), ApplicationStatus.ERROR, request.userLogin(), null, null, null,
+                message, null);
+        try {
+            task.udpManager().send(response, task.clientAddress());
+        } catch (IOException e) {
+            log.error("Ошибка отправки отказа на {}: {}", task.clientAddress(), e.getMessage());
+        }
+    }
+
     /**
      * Поток для обработки запросов. Обрабатывает NetworkObject и создаёт ответ.
+     * Таких потоков запускается несколько, каждый берет из очереди по одному запросу,
+     * так что долгий запрос к бд занимает только свой поток и не задерживает остальных.
      */
     private void processRequests() {
         try {
             while (!Thread.currentThread().isInterrupted()) {
                 RequestTask task = requestQueue.take();
-                NetworkObject response = commandManager.executeCommand(task.request());
-                responseQueue.put(new ResponseTask(response, task.clientAddress()));
+                try {
+                    long takenAt = System.nanoTime();
+                    queueWaitTime.record(takenAt - task.receivedNanos());
+                    NetworkObject response = execute(task.request());
+                    long executedAt = System.nanoTime();
+                    executeTime.record(executedAt - takenAt);
+                    responseQueue.put(new ResponseTask(response, task.clientAddress(), task.udpManager(),
+                            task.receivedNanos(), executedAt));
+                } finally {
+                    admission.complete();
+                }
             }
         } catch (InterruptedException e) {
-            log.error("Поток обработки запросов был прерван.");
+            log.info("Поток обработки запросов остановлен.");
+        }
+    }
+
+    /**
+     * Выполняет команду. Команду, требующую аутентификации, - только после проверки логина и пароля,
+     * административную - только для логинов из ServerConfig.adminLogins.
+     * @param request запрос
+     * @return ответ команды или отказ
+     */
+    private NetworkObject execute(NetworkObject request) {
+        if (commandManager.requiresAuthentication(request.command())
+                && !collectionManager.checkCredentials(request.userLogin(), request.userPassword())) {
+            return new NetworkObject(request.id(), ApplicationStatus.ERROR, null, null, null, null,
+                    "Команда доступна только аутентифицированному пользователю", null);
         }
+        if (!isAdminAllowed(request)) {
+            return new NetworkObject(request.id(), ApplicationStatus.ERROR, null, null, null, null,
+                    "Команда доступна только администратору", null);
+        }
+        return commandManager.executeCommand(request);
     }
 
     /**
-     * Поток для отправки ответов. Берёт готовый ответ и отправляет его клиенту через UDPManager.
+     * @return false, если команда административная, а логин запроса не входит в ServerConfig.adminLogins
+     */
+    private boolean isAdminAllowed(NetworkObject request) {
+        return commandManager.getCommandClass(request.command()) != CommandClass.ADMIN
+                || config.getAdminLogins().isEmpty()
+                || request.userLogin() != null && config.getAdminLogins().contains(request.userLogin());
+    }
+
+    /**
+     * Поток для отправки ответов. Берёт готовый ответ и отправляет его клиенту
+     * через тот же канал, которым был принят запрос.
+     * Ошибка отправки одного ответа не останавливает поток.
+     * Завершается, дойдя до метки END_OF_RESPONSES.
      */
     private void sendResponses() {
         try {
             while (!Thread.currentThread().isInterrupted()) {
                 ResponseTask task = responseQueue.take();
-                udpManager.send(task.response(), task.clientAddress());
+                if (task == END_OF_RESPONSES) {
+                    log.info("Все ответы отправлены, поток отправки завершен.");
+                    return;
+                }
+                long takenAt = System.nanoTime();
+                responseWaitTime.record(takenAt - task.enqueuedNanos());
+                try {
+                    task.udpManager().send(task.response(), task.clientAddress());
+                    long sentAt = System.nanoTime();
+                    sendTime.record(sentAt - takenAt);
+                    endToEndTime.record(sentAt - task.receivedNanos());
+                } catch (IOException e) {
+                    log.error("Ошибка отправки ответа на {}: {}", task.clientAddress(), e.getMessage());
+                }
             }
-        } catch (InterruptedException | IOException e) {
-            log.error("Ошибка в потоке отправки ответов: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            log.error("Поток отправки ответов был прерван.");
         }
     }
 
     private void addCommand() {
         commandManager.addCommand(new Add(this.collectionManager));
+        commandManager.addCommand(new Show(this.collectionManager));
+        commandManager.addCommand(new ShowMine(this.collectionManager));
+        commandManager.addCommand(new Authenticate(this.collectionManager));
+        commandManager.addCommand(new Stats(this.metrics));
     }
 
-    private record RequestTask(NetworkObject request, InetSocketAddress clientAddress) {}
-    private record ResponseTask(NetworkObject response, InetSocketAddress clientAddress) {}
+    private record RequestTask(NetworkObject request, InetSocketAddress clientAddress, UDPManager udpManager,
+                               CommandClass commandClass, long receivedNanos) {}
+    private record ResponseTask(NetworkObject response, InetSocketAddress clientAddress, UDPManager udpManager,
+                                long receivedNanos, long enqueuedNanos) {}
+
+    private static final ResponseTask END_OF_RESPONSES = new ResponseTask(null, null, null, 0, 0);
 }
\ No newline at end of file
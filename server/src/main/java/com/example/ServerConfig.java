@@ -0,0 +1,208 @@
+package com.example;
+
+import com.example.common.command.CommandClass;
+import com.example.common.network.NetworkPacket;
+import com.example.common.network.serializer.CodecType;
+import com.example.pipeline.OverloadPolicy;
+import com.example.pipeline.QueueType;
+import com.example.pipeline.WaitStrategyType;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Настройки режимов работы сервера.
+ * Значения по умолчанию подобраны для обычного запуска на одной машине.
+ */
+@Getter
+@Setter
+public class ServerConfig {
+    /**
+     * Если true, поток чтения блокируется на Selector и просыпается только по готовности канала.
+     * Если false, используется старый цикл опроса неблокирующего канала.
+     */
+    private boolean reactorMode = true;
+
+    /**
+     * Число каналов приема на одном порту (SO_REUSEPORT), у каждого свой поток чтения,
+     * буфер и сборщик пакетов. Значение 1 отключает шардирование.
+     */
+    private int ingressShards = 1;
+
+    /**
+     * Число потоков, параллельно выполняющих команды.
+     * Каждый запрос выполняется целиком на одном из них, значение 1 дает прежнее последовательное выполнение.
+     */
+    private int requestWorkers = 16;
+
+    /**
+     * Если true, неблокирующие команды (чтения из памяти) выполняются и отправляются
+     * прямо в потоке чтения, без очередей requestQueue и responseQueue.
+     */
+    private boolean runToCompletion = true;
+
+    /**
+     * Реализация очередей между стадиями чтения, обработки и отправки.
+     */
+    private QueueType queueType = QueueType.RING;
+
+    /**
+     * Емкость каждой очереди между стадиями. Для кольцевого буфера округляется до степени двойки.
+     */
+    private int queueCapacity = 4096;
+
+    /**
+     * Как потоки ждут на пустом или заполненном кольцевом буфере.
+     * Для LinkedBlockingQueue не используется.
+     */
+    private WaitStrategyType waitStrategy = WaitStrategyType.PARK;
+
+    /**
+     * Что делать с новым запросом, когда очередь обработки заполнена.
+     */
+    private OverloadPolicy overloadPolicy = OverloadPolicy.REJECT;
+
+    /**
+     * Классы команд, которые политика DROP_BY_CLASS сбрасывает первыми.
+     */
+    private Set<CommandClass> sheddableClasses = EnumSet.of(CommandClass.READ);
+
+    /**
+     * Доля заполнения очереди обработки, после которой DROP_BY_CLASS начинает сбрасывать sheddableClasses.
+     */
+    private double shedThreshold = 0.75;
+
+    /**
+     * Сколько запросов в секунду разрешено одному адресу клиента. Неположительное значение отключает лимит.
+     */
+    private double clientRateLimit = 200;
+
+    /**
+     * Сколько запросов подряд может прислать один адрес клиента сверх средней частоты.
+     */
+    private double clientBurst = 400;
+
+    /**
+     * Сколько запросов в секунду разрешено одному логину. Неположительное значение отключает лимит.
+     */
+    private double userRateLimit = 200;
+
+    /**
+     * Сколько запросов подряд может прислать один логин сверх средней частоты.
+     */
+    private double userBurst = 400;
+
+    /**
+     * Сколько клиентов одновременно отслеживает каждый ограничитель частоты.
+     */
+    private int rateLimiterMaxEntries = 10_000;
+
+    /**
+     * Через сколько секунд без запросов клиент забывается ограничителем частоты.
+     */
+    private long rateLimiterIdleSeconds = 60;
+
+    /**
+     * Если true, очередь обработки делится на полосы по классам команд
+     * и потребители выбирают полосы по весам laneWeights.
+     * Емкость каждой полосы равна queueCapacity.
+     */
+    private boolean priorityLanes = true;
+
+    /**
+     * Относительная частота обслуживания полос. Класс без веса получает вес 1.
+     */
+    private Map<CommandClass, Integer> laneWeights = new EnumMap<>(Map.of(
+            CommandClass.READ, 8,
+            CommandClass.AUTH, 4,
+            CommandClass.WRITE, 2,
+            CommandClass.ADMIN, 1
+    ));
+
+    /**
+     * Сколько миллисекунд при остановке сервер дожимает запросы из очереди и отправляет ответы,
+     * прежде чем закрыть бд и каналы.
+     */
+    private long shutdownDrainMillis = 10_000;
+
+    /**
+     * Как часто в секундах отчет метрик пишется в лог. Значение 0 отключает периодический вывод,
+     * метрики остаются доступны командой stats.
+     */
+    private long metricsLogSeconds = 60;
+
+    /**
+     * Кодек для ответов сервера. Входящие запросы декодируются любым кодеком.
+     */
+    private CodecType codec = CodecType.BINARY;
+
+    /**
+     * Сколько свободных direct-буферов датаграмм (по 64 КБ) держит пул, общий для всех шардов.
+     * Должно хватать на буферы приема шардов, отправки и кусков собираемых сообщений.
+     */
+    private int bufferPoolSize = 64;
+
+    /**
+     * Сколько ждать недостающие пакеты составного сообщения с момента прихода первого.
+     */
+    private long reassemblyTimeoutMillis = 5_000;
+    /**
+     * Сколько памяти буферов могут занимать незавершенные сообщения одного шарда.
+     * При превышении вытесняются самые старые сообщения.
+     */
+    private long reassemblyMaxBytes = 32L << 20;
+
+    /**
+     * Надежная доставка ответов: клиент подтверждает их, потерянные куски повторяются по запросу.
+     */
+    private boolean reliableDelivery = true;
+    /**
+     * Сколько ответов одного шарда может одновременно ждать подтверждения.
+     */
+    private int sendWindow = 1024;
+    /**
+     * Через сколько без подтверждения повторять ответ в первый раз; дальше интервал удваивается.
+     */
+    private long retransmitTimeoutMillis = 200;
+    /**
+     * Сколько раз повторять неподтвержденный ответ, прежде чем бросить.
+     */
+    private int maxRetransmits = 5;
+    /**
+     * Период обслуживания таймеров надежной доставки и сборки сообщений.
+     */
+    private long reliabilityTickMillis = 20;
+
+    /**
+     * Сжатие ответов для клиентов, которые сообщили, что понимают Deflate.
+     */
+    private boolean compression = true;
+    /**
+     * Ответы меньше этого размера в байтах не сжимаются.
+     */
+    private int compressionThreshold = 1024;
+    /**
+     * Уровень сжатия Deflate от 1 (быстро) до 9 (плотно).
+     */
+    private int compressionLevel = 1;
+
+    /**
+     * Размер куска сообщения в одной датаграмме. По умолчанию датаграмма проходит MTU 1500 без IP-фрагментации.
+     */
+    private int fragmentSize = NetworkPacket.MTU_SAFE_PAYLOAD_SIZE;
+    /**
+     * Искать пробными пакетами наибольший размер куска, проходящий до каждого клиента без потерь.
+     * Работает только на JDK с опцией IP_DONTFRAGMENT (19 и новее), на остальных остается выключенным.
+     */
+    private boolean mtuProbing = false;
+
+    /**
+     * Логины, которым доступны административные команды (CommandClass.ADMIN), например stats.
+     * Если пусто, их может выполнить любой аутентифицированный пользователь.
+     */
+    private Set<String> adminLogins = Set.of();
+}
@@ -2,6 +2,7 @@ package com.example.commands;
 
 import com.example.DB.TreeSetCollectionManager;
 import com.example.common.command.Command;
+import com.example.common.command.CommandClass;
 import com.example.common.network.ApplicationStatus;
 import com.example.common.network.NetworkObject;
 import lombok.extern.log4j.Log4j2;
@@ -16,6 +17,11 @@ public class Authenticate extends Command {
         this.collectionManager = collectionManager;
     }
 
+    @Override
+    public CommandClass getCommandClass() {
+        return CommandClass.AUTH;
+    }
+
     @Override
     public NetworkObject execute(NetworkObject request) {
         String login = request.userLogin();
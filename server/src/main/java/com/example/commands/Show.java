@@ -2,40 +2,135 @@ package com.example.commands;
 
 import com.example.DB.TreeSetCollectionManager;
 import com.example.common.command.Command;
+import com.example.common.command.CommandClass;
 import com.example.common.model.Movie;
 import com.example.common.network.ApplicationStatus;
 import com.example.common.network.NetworkObject;
 import lombok.extern.log4j.Log4j2;
 
-import java.util.TreeSet;
+import java.util.List;
 
+/**
+ * Постраничный вывод коллекции.
+ * Аргументы: размер страницы и курсор, полученный с предыдущей страницей.
+ * В ответе args содержит курсор следующей страницы или null, если страница последняя.
+ * Курсор - ключ сортировки и id последнего элемента страницы, поэтому следующая страница
+ * продолжается с нужного места в порядке коллекции, даже если коллекция изменилась между запросами,
+ * и фильмы с одинаковым ключом сортировки не пропускаются.
+ */
 @Log4j2
 public class Show extends Command {
-    private final TreeSetCollectionManager manager;
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    protected final TreeSetCollectionManager manager;
 
     public Show(TreeSetCollectionManager manager){
-        super("show", "вывести в стандартный поток вывода все элементы коллекции в строковом представлении");
+        this("show", "вывести в стандартный поток вывода все элементы коллекции в строковом представлении", manager);
+    }
+
+    protected Show(String name, String description, TreeSetCollectionManager manager) {
+        super(name, description);
         this.manager = manager;
     }
+    @Override
+    public boolean isNonBlocking() {
+        return true;
+    }
+
+    @Override
+    public CommandClass getCommandClass() {
+        return CommandClass.READ;
+    }
+
     @Override
     public NetworkObject execute(NetworkObject request) {
-        log.info("выполняется команда show");
-        TreeSet<Movie> collection = manager.getCollection();
-        String message;
-        if (collection.isEmpty()) {
-            message = "коллекция пуста";
-            log.info(message);
-            return new NetworkObject(request.id(), ApplicationStatus.RUNNING, null, null, null, null, message, null);
-        } else {
-            message = "список элементов коллекции успешно отображен\n";
-            message += "в коллекции " + collection.size() + " элементов\n";
-            for (Movie movie : collection) {
-                message += movie.toString() + "\n";
+        log.info("выполняется команда {}", getName());
+        String[] args = request.args() == null || request.args().isBlank()
+                ? new String[0] : request.args().trim().split("\\s+");
+        int pageSize;
+        Movie after;
+        try {
+            pageSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PAGE_SIZE;
+            after = args.length > 1 ? parseCursor(args[1]) : null;
+        } catch (IllegalArgumentException e) {
+            return error(request, "Неверные аргументы show: ожидаются размер страницы и курсор");
+        }
+        if (args.length > 2 || pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            return error(request, "Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+
+        // Лишний элемент показывает, есть ли следующая страница
+        List<Movie> page;
+        try {
+            page = fetchPage(request, after, pageSize + 1);
+        } catch (IllegalArgumentException e) {
+            return error(request, e.getMessage());
+        }
+        boolean hasMore = page.size() > pageSize;
+        int shown = Math.min(page.size(), pageSize);
+
+        StringBuilder message = new StringBuilder();
+        if (after == null) {
+            if (page.isEmpty()) {
+                log.info("{}: нет элементов", getName());
+                return new NetworkObject(request.id(), ApplicationStatus.RUNNING, null, null, getName(), null, emptyMessage(), null);
             }
-            NetworkObject response = new NetworkObject(request.id(), ApplicationStatus.RUNNING, null, null, null, null, message, null);
+            message.append(header());
+        }
+        for (int i = 0; i < shown; i++) {
+            message.append(page.get(i)).append('\n');
+        }
+        String cursor = hasMore ? cursorOf(page.get(shown - 1)) : null;
+        log.debug("{}: отправлено {} элементов, курсор {}", getName(), shown, cursor);
+        return new NetworkObject(request.id(), ApplicationStatus.RUNNING, null, null, getName(), cursor, message.toString(), null);
+    }
+
+    /**
+     * @param request запрос страницы
+     * @param after последний элемент прошлой страницы или null
+     * @param limit сколько элементов вернуть
+     * @return элементы страницы
+     * @throws IllegalArgumentException если запрос нельзя выполнить
+     */
+    protected List<Movie> fetchPage(NetworkObject request, Movie after, int limit) {
+        return manager.getPage(after, limit);
+    }
+
+    /**
+     * @return текст перед первой страницей
+     */
+    protected String header() {
+        return "список элементов коллекции успешно отображен\n"
+                + "в коллекции " + manager.getCollectionSize() + " элементов\n";
+    }
+
+    /**
+     * @return ответ, если показывать нечего
+     */
+    protected String emptyMessage() {
+        return "коллекция пуста";
+    }
+
+    private NetworkObject error(NetworkObject request, String message) {
+        return new NetworkObject(request.id(), ApplicationStatus.ERROR, null, null, getName(), null, message, null);
+    }
+
+    private static String cursorOf(Movie movie) {
+        return movie.getOscarsCount() + ":" + movie.getUsaBoxOffice() + ":" + movie.getId();
+    }
 
-        log.info(message);
-        return response;
+    /**
+     * @return фильм-образец с тем же ключом сортировки и id, что и у последнего элемента прошлой страницы
+     */
+    private static Movie parseCursor(String cursor) {
+        String[] parts = cursor.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Неверный курсор: " + cursor);
         }
+        long oscarsCount = Long.parseLong(parts[0]);
+        long usaBoxOffice = Long.parseLong(parts[1]);
+        int id = Integer.parseInt(parts[2]);
+        return new Movie(id, null, null, oscarsCount, usaBoxOffice, null, null, null);
     }
 }
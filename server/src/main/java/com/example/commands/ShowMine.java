@@ -0,0 +1,41 @@
+package com.example.commands;
+
+import com.example.DB.TreeSetCollectionManager;
+import com.example.common.model.Movie;
+import com.example.common.network.NetworkObject;
+
+import java.util.List;
+
+/**
+ * Постраничный вывод фильмов пользователя, отправившего запрос.
+ * Аргументы и курсор те же, что у show, но страницы берутся из индекса по владельцу,
+ * поэтому запрос не обходит чужие фильмы.
+ */
+public class ShowMine extends Show {
+    public ShowMine(TreeSetCollectionManager manager) {
+        super("show_mine", "вывести элементы коллекции, принадлежащие пользователю", manager);
+    }
+
+    /**
+     * Логин запроса выбирает, чьи фильмы показать, поэтому ему нельзя верить без пароля.
+     */
+    @Override
+    public boolean requiresAuthentication() {
+        return true;
+    }
+
+    @Override
+    protected List<Movie> fetchPage(NetworkObject request, Movie after, int limit) {
+        return manager.getPageOfOwner(request.userLogin(), after, limit);
+    }
+
+    @Override
+    protected String header() {
+        return "ваши фильмы:\n";
+    }
+
+    @Override
+    protected String emptyMessage() {
+        return "у вас нет фильмов";
+    }
+}
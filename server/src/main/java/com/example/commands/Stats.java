@@ -0,0 +1,43 @@
+package com.example.commands;
+
+import com.example.common.command.Command;
+import com.example.common.command.CommandClass;
+import com.example.common.network.ApplicationStatus;
+import com.example.common.network.NetworkObject;
+import com.example.metrics.ServerMetrics;
+import lombok.extern.log4j.Log4j2;
+
+@Log4j2
+public class Stats extends Command {
+    private final ServerMetrics metrics;
+
+    public Stats(ServerMetrics metrics) {
+        super("stats", "вывести метрики сервера: глубины очередей, задержки стадий, частоты пакетов и сообщений");
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean isNonBlocking() {
+        return true;
+    }
+
+    /**
+     * Метрики раскрывают нагрузку и устройство сервера, поэтому доступны только аутентифицированным
+     * пользователям, а если задан ServerConfig.adminLogins - только перечисленным в нем.
+     */
+    @Override
+    public boolean requiresAuthentication() {
+        return true;
+    }
+
+    @Override
+    public CommandClass getCommandClass() {
+        return CommandClass.ADMIN;
+    }
+
+    @Override
+    public NetworkObject execute(NetworkObject request) {
+        log.info("выполняется команда stats");
+        return new NetworkObject(request.id(), ApplicationStatus.RUNNING, null, null, null, null, metrics.report(), null);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Метрики конвейера сервера: гистограммы задержек стадий, текущие значения (глубины очередей, счетчики)
+ * и частоты событий в секунду.
+ * Все метрики регистрируются при запуске сервера, дальше набор не меняется,
+ * поэтому чтение отчета не требует синхронизации с записью.
+ */
+public class ServerMetrics {
+    private final long startedAt = System.nanoTime();
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+    private final Map<String, LongSupplier> gauges = new LinkedHashMap<>();
+    private final Map<String, RateMeter> rates = new LinkedHashMap<>();
+
+    /**
+     * Возвращает гистограмму по имени, создавая ее при первом обращении.
+     * @param name имя стадии
+     * @return гистограмма
+     */
+    public synchronized LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * Регистрирует значение, которое читается в момент построения отчета.
+     * @param name имя метрики
+     * @param supplier источник значения
+     */
+    public synchronized void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Регистрирует растущий счетчик, для которого в отчете показывается частота в секунду.
+     * @param name имя метрики
+     * @param counter источник значения счетчика
+     */
+    public synchronized void rate(String name, LongSupplier counter) {
+        rates.put(name, new RateMeter(counter));
+    }
+
+    /**
+     * Пересчитывает частоты по приросту счетчиков с прошлого вызова.
+     * Вызывается сервером раз в секунду.
+     */
+    public synchronized void sampleRates() {
+        long now = System.nanoTime();
+        for (RateMeter meter : rates.values()) {
+            meter.sample(now);
+        }
+    }
+
+    /**
+     * @return текстовый отчет по всем метрикам
+     */
+    public synchronized String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("время работы: ")
+                .append(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startedAt)).append(" с\n");
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            report.append(gauge.getKey()).append(": ").append(gauge.getValue().getAsLong()).append('\n');
+        }
+        for (Map.Entry<String, RateMeter> rate : rates.entrySet()) {
+            report.append(rate.getKey()).append(": ").append(rate.getValue().total()).append(" всего, ")
+                    .append(String.format("%.1f", rate.getValue().perSecond)).append("/с\n");
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            report.append(entry.getKey())
+                    .append(": n=").append(histogram.getCount())
+                    .append(" mean=").append(micros(histogram.getMeanNanos()))
+                    .append(" p50=").append(micros(histogram.getPercentileNanos(50)))
+                    .append(" p90=").append(micros(histogram.getPercentileNanos(90)))
+                    .append(" p99=").append(micros(histogram.getPercentileNanos(99)))
+                    .append(" p99.9=").append(micros(histogram.getPercentileNanos(99.9)))
+                    .append(" max=").append(micros(histogram.getMaxNanos()))
+                    .append(" мкс\n");
+        }
+        return report.toString();
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static final class RateMeter {
+        private final LongSupplier counter;
+        private long lastValue;
+        private long lastSampledAt = System.nanoTime();
+        private double perSecond;
+
+        private RateMeter(LongSupplier counter) {
+            this.counter = counter;
+            this.lastValue = counter.getAsLong();
+        }
+
+        private void sample(long now) {
+            long value = counter.getAsLong();
+            long elapsed = now - lastSampledAt;
+            if (elapsed > 0) {
+                perSecond = (value - lastValue) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            }
+            lastValue = value;
+            lastSampledAt = now;
+        }
+
+        private long total() {
+            return counter.getAsLong();
+        }
+    }
+}
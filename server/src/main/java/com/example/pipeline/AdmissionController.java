@@ -0,0 +1,162 @@
+package com.example.pipeline;
+
+import com.example.common.command.CommandClass;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Пропускает запросы в ограниченную очередь обработки по заданной политике перегрузки.
+ * Никогда не блокирует поток чтения: каждый запрос либо попадает в очередь, либо сбрасывается.
+ * Сброшенные запросы передаются в onShed, чтобы клиент получил ответ, а не ждал до таймаута.
+ * Принятая задача считается в работе с момента постановки в очередь до вызова complete обработчиком,
+ * поэтому задача, которую потребитель уже забрал из очереди, но еще не выполнил, не теряется при остановке.
+ * @param <T> тип задачи в очереди
+ */
+@Log4j2
+public class AdmissionController<T> {
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final StageQueue<T> queue;
+    private final OverloadPolicy policy;
+    private final Function<T, CommandClass> classifier;
+    private final Set<CommandClass> sheddableClasses;
+    private final double shedThreshold;
+    private final Consumer<T> onShed;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder droppedOldest = new LongAdder();
+    private final LongAdder shedByClass = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param queue очередь обработки
+     * @param policy политика при перегрузке
+     * @param classifier определяет класс команды задачи
+     * @param sheddableClasses классы, которые при DROP_BY_CLASS сбрасываются первыми
+     * @param shedThreshold доля заполнения очереди, начиная с которой сбрасываются sheddableClasses;
+     *                      для очереди с полосами считается заполнение полосы, в которую идет запрос
+     * @param onShed получатель сброшенных задач
+     */
+    public AdmissionController(StageQueue<T> queue, OverloadPolicy policy, Function<T, CommandClass> classifier,
+                               Set<CommandClass> sheddableClasses, double shedThreshold, Consumer<T> onShed) {
+        this.queue = queue;
+        this.policy = policy;
+        this.classifier = classifier;
+        this.sheddableClasses = sheddableClasses;
+        this.shedThreshold = Math.min(1, shedThreshold);
+        this.onShed = onShed;
+    }
+
+    /**
+     * Пытается поставить задачу в очередь.
+     * @param task новая задача
+     * @return true, если задача принята
+     */
+    public boolean admit(T task) {
+        if (policy == OverloadPolicy.DROP_BY_CLASS
+                && sheddableClasses.contains(classifier.apply(task))
+                && queue.sizeFor(task) >= shedDepth(task)) {
+            shedByClass.increment();
+            log.debug("Очередь заполнена на {} из {}, запрос сброшен по классу", queue.sizeFor(task), queue.capacityFor(task));
+            onShed.accept(task);
+            return false;
+        }
+
+        if (enqueue(task)) {
+            return true;
+        }
+
+        if (policy == OverloadPolicy.DROP_OLDEST) {
+            T oldest = queue.evictFor(task);
+            if (oldest != null) {
+                inFlight.decrementAndGet();
+                droppedOldest.increment();
+                onShed.accept(oldest);
+            }
+            if (enqueue(task)) {
+                return true;
+            }
+        }
+
+        rejected.increment();
+        log.debug("Очередь обработки заполнена ({}), запрос отклонен", queue.capacity());
+        onShed.accept(task);
+        return false;
+    }
+
+    /**
+     * Ставит задачу в очередь. Счетчик увеличивается до постановки: иначе потребитель мог бы
+     * забрать и завершить задачу раньше, и остановка увидела бы пустую очередь без задач в работе.
+     */
+    private boolean enqueue(T task) {
+        inFlight.incrementAndGet();
+        if (queue.offer(task)) {
+            admitted.increment();
+            return true;
+        }
+        inFlight.decrementAndGet();
+        return false;
+    }
+
+    /**
+     * Отмечает, что принятая задача обработана или снята с очереди без обработки.
+     * Вызывается ровно один раз на каждую задачу, которую потребитель забрал из очереди.
+     */
+    public void complete() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Дожидается, пока все принятые задачи будут обработаны.
+     * @param deadline момент System.nanoTime(), после которого ждать больше нельзя
+     * @return true, если задач в работе не осталось
+     */
+    public boolean awaitIdle(long deadline) {
+        while (inFlight.get() > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(IDLE_POLL_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * @return число принятых задач, ждущих в очереди или выполняемых
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return заполнение части очереди, куда попадет task, начиная с которого запросы сбрасываются по классу
+     */
+    private int shedDepth(T task) {
+        int capacity = queue.capacityFor(task);
+        return (int) Math.max(1, capacity * shedThreshold);
+    }
+
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getDroppedOldest() {
+        return droppedOldest.sum();
+    }
+
+    public long getShedByClass() {
+        return shedByClass.sum();
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.pipeline;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Очередь стадии поверх LinkedBlockingQueue.
+ * Выделяет узел на каждый элемент и берет блокировку на каждой операции,
+ * зато потоки спят без нагрузки на процессор, пока очередь пуста.
+ * @param <T> тип передаваемой задачи
+ */
+public class BlockingStageQueue<T> implements StageQueue<T> {
+    private final BlockingQueue<T> queue;
+    private final int capacity;
+
+    public BlockingStageQueue(int capacity) {
+        this.capacity = capacity;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public boolean offer(T element) {
+        return queue.offer(element);
+    }
+
+    @Override
+    public void put(T element) throws InterruptedException {
+        queue.put(element);
+    }
+
+    @Override
+    public T poll() {
+        return queue.poll();
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        return queue.take();
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+}
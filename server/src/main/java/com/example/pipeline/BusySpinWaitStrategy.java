@@ -0,0 +1,22 @@
+package com.example.pipeline;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Активное ожидание без засыпания.
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+    @Override
+    public void await(BooleanSupplier ready) throws InterruptedException {
+        while (!ready.getAsBoolean()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public void signal() {
+    }
+}
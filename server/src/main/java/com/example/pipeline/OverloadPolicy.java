@@ -0,0 +1,21 @@
+package com.example.pipeline;
+
+/**
+ * Что делать с запросом, когда очередь обработки заполнена.
+ */
+public enum OverloadPolicy {
+    /**
+     * Отклонить новый запрос.
+     */
+    REJECT,
+    /**
+     * Выкинуть самый старый запрос из очереди и принять новый.
+     * При разделении на полосы выкидывается самый старый запрос той же полосы.
+     */
+    DROP_OLDEST,
+    /**
+     * Начинать отклонять запросы сбрасываемых классов раньше, чем очередь заполнится,
+     * оставляя остаток места под остальные классы.
+     */
+    DROP_BY_CLASS
+}
@@ -0,0 +1,53 @@
+package com.example.pipeline;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Ожидание со сном до сигнала.
+ * Блокировка берется только когда кто-то действительно спит,
+ * поэтому пока обе стороны успевают, signal() стоит одного чтения volatile поля.
+ */
+public class ParkingWaitStrategy implements WaitStrategy {
+    private static final int SPIN_TRIES = 100;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final AtomicBoolean signalNeeded = new AtomicBoolean(false);
+
+    @Override
+    public void await(BooleanSupplier ready) throws InterruptedException {
+        for (int i = 0; i < SPIN_TRIES; i++) {
+            if (ready.getAsBoolean()) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        lock.lock();
+        try {
+            while (true) {
+                signalNeeded.set(true);
+                if (ready.getAsBoolean()) {
+                    return;
+                }
+                changed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signal() {
+        if (signalNeeded.get() && signalNeeded.getAndSet(false)) {
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.pipeline;
+
+import com.example.common.command.CommandClass;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Очередь обработки, разделенная на полосы по классам команд.
+ * Каждый класс стоит в своей полосе, так что очередь записей в бд не задерживает чтения.
+ * Потребители выбирают полосы по взвешенному циклическому расписанию:
+ * полоса с весом 4 обслуживается в четыре раза чаще полосы с весом 1, а пустые полосы пропускаются.
+ * Расписание строится заранее, выбор следующей полосы - один атомарный инкремент.
+ * @param <T> тип задачи
+ */
+public class PriorityLanes<T> implements StageQueue<T> {
+    private final Function<T, CommandClass> classifier;
+    private final List<StageQueue<T>> lanes;
+    /**
+     * Условия ожидания места в каждой полосе, созданные заранее, чтобы put ничего не выделял.
+     */
+    private final List<BooleanSupplier> laneHasRoom;
+    private final int[] schedule;
+    private final AtomicLong ticket = new AtomicLong();
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = () -> size() > 0;
+    private final int capacity;
+
+    /**
+     * @param classifier определяет класс команды задачи
+     * @param weights вес каждого класса, классы без веса получают вес 1
+     * @param queueType реализация очереди каждой полосы
+     * @param laneCapacity емкость каждой полосы
+     * @param waitStrategy как ждут потребители, когда все полосы пусты
+     */
+    public PriorityLanes(Function<T, CommandClass> classifier, Map<CommandClass, Integer> weights,
+                         QueueType queueType, int laneCapacity, WaitStrategyType waitStrategy) {
+        this.classifier = classifier;
+        CommandClass[] classes = CommandClass.values();
+        List<StageQueue<T>> lanes = new ArrayList<>(classes.length);
+        int totalCapacity = 0;
+        for (CommandClass commandClass : classes) {
+            StageQueue<T> lane = queueType.create(laneCapacity, waitStrategy);
+            lanes.add(lane);
+            totalCapacity = (int) Math.min(Integer.MAX_VALUE, (long) totalCapacity + lane.capacity());
+        }
+        this.lanes = List.copyOf(lanes);
+        this.laneHasRoom = this.lanes.stream()
+                .<BooleanSupplier>map(lane -> () -> lane.size() < lane.capacity())
+                .toList();
+        this.capacity = totalCapacity;
+        this.schedule = buildSchedule(classes, weights);
+        this.waitStrategy = waitStrategy.create();
+    }
+
+    /**
+     * Строит плавное взвешенное расписание: полосы с большим весом
+     * чередуются с остальными, а не идут одним блоком.
+     */
+    private static int[] buildSchedule(CommandClass[] classes, Map<CommandClass, Integer> weights) {
+        int[] weight = new int[classes.length];
+        int total = 0;
+        for (CommandClass commandClass : classes) {
+            weight[commandClass.ordinal()] = Math.max(1, weights.getOrDefault(commandClass, 1));
+            total += weight[commandClass.ordinal()];
+        }
+        List<Integer> order = new ArrayList<>(total);
+        int[] current = new int[classes.length];
+        for (int step = 0; step < total; step++) {
+            int best = 0;
+            for (int lane = 0; lane < classes.length; lane++) {
+                current[lane] += weight[lane];
+                if (current[lane] > current[best]) {
+                    best = lane;
+                }
+            }
+            current[best] -= total;
+            order.add(best);
+        }
+        return order.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Override
+    public boolean offer(T element) {
+        if (lane(element).offer(element)) {
+            waitStrategy.signal();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void put(T element) throws InterruptedException {
+        BooleanSupplier hasRoom = laneHasRoom.get(classifier.apply(element).ordinal());
+        while (!offer(element)) {
+            waitStrategy.await(hasRoom);
+        }
+    }
+
+    @Override
+    public T poll() {
+        int start = (int) (ticket.getAndIncrement() % schedule.length);
+        for (int i = 0; i < schedule.length; i++) {
+            T element = lanes.get(schedule[(start + i) % schedule.length]).poll();
+            if (element != null) {
+                waitStrategy.signal();
+                return element;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        T element;
+        while ((element = poll()) == null) {
+            waitStrategy.await(notEmpty);
+        }
+        return element;
+    }
+
+    /**
+     * Освобождает место в полосе нового элемента, забирая самый старый элемент той же полосы.
+     */
+    @Override
+    public T evictFor(T element) {
+        T evicted = lane(element).poll();
+        if (evicted != null) {
+            waitStrategy.signal();
+        }
+        return evicted;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (StageQueue<T> lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    /**
+     * @param commandClass класс команд
+     * @return число задач, ждущих в полосе класса
+     */
+    public int size(CommandClass commandClass) {
+        return lanes.get(commandClass.ordinal()).size();
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return число задач в полосе класса element
+     */
+    @Override
+    public int sizeFor(T element) {
+        return lane(element).size();
+    }
+
+    /**
+     * @return емкость полосы класса element
+     */
+    @Override
+    public int capacityFor(T element) {
+        return lane(element).capacity();
+    }
+
+    private StageQueue<T> lane(T element) {
+        return lanes.get(classifier.apply(element).ordinal());
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.pipeline;
+
+/**
+ * Реализация очередей между стадиями сервера.
+ */
+public enum QueueType {
+    /**
+     * LinkedBlockingQueue: узел на каждый элемент и блокировка на каждой операции.
+     */
+    LINKED,
+    /**
+     * Заранее выделенный кольцевой буфер без блокировок.
+     */
+    RING;
+
+    public <T> StageQueue<T> create(int capacity, WaitStrategyType waitStrategy) {
+        return switch (this) {
+            case LINKED -> new BlockingStageQueue<>(capacity);
+            case RING -> new RingBufferQueue<>(capacity, waitStrategy.create());
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.pipeline;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограничитель частоты запросов по алгоритму token bucket, отдельное ведро на каждый ключ.
+ * Ведра хранятся в ограниченной карте в порядке последнего обращения:
+ * давно молчащие ключи удаляются по таймауту, а при переполнении вытесняется самый старый,
+ * так что сам ограничитель не растет без предела.
+ * @param <K> ключ, например адрес клиента или логин
+ */
+public class RateLimiter<K> {
+    private final double tokensPerNano;
+    private final double burst;
+    private final int maxEntries;
+    private final long idleTimeoutNanos;
+    private final LinkedHashMap<K, Bucket> buckets;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * @param ratePerSecond сколько запросов в секунду восполняется в ведре
+     * @param burst емкость ведра, то есть допустимый всплеск запросов подряд
+     * @param maxEntries максимальное число отслеживаемых ключей
+     * @param idleTimeout через сколько без запросов ведро удаляется
+     * @param unit единица измерения idleTimeout
+     */
+    public RateLimiter(double ratePerSecond, double burst, int maxEntries, long idleTimeout, TimeUnit unit) {
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, burst);
+        this.maxEntries = maxEntries;
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+        this.buckets = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Bucket> eldest) {
+                return size() > RateLimiter.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Забирает один токен из ведра ключа.
+     * @param key ключ клиента
+     * @return true, если запрос укладывается в лимит
+     */
+    public synchronized boolean tryAcquire(K key) {
+        long now = System.nanoTime();
+        expireIdle(now);
+
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new Bucket(burst, now);
+            buckets.put(key, bucket);
+        } else {
+            bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.lastRefill) * tokensPerNano);
+            bucket.lastRefill = now;
+        }
+
+        if (bucket.tokens >= 1) {
+            bucket.tokens -= 1;
+            allowed.increment();
+            return true;
+        }
+        limited.increment();
+        return false;
+    }
+
+    /**
+     * Удаляет ведра, к которым давно не обращались.
+     * Карта упорядочена по последнему обращению, поэтому проверка останавливается на первом живом ведре.
+     */
+    private void expireIdle(long now) {
+        Iterator<Bucket> iterator = buckets.values().iterator();
+        while (iterator.hasNext()) {
+            Bucket bucket = iterator.next();
+            if (now - bucket.lastRefill < idleTimeoutNanos) {
+                return;
+            }
+            iterator.remove();
+            expired.increment();
+        }
+    }
+
+    public synchronized int getTrackedKeys() {
+        return buckets.size();
+    }
+
+    public long getAllowed() {
+        return allowed.sum();
+    }
+
+    public long getLimited() {
+        return limited.sum();
+    }
+
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long lastRefill;
+
+        private Bucket(double tokens, long lastRefill) {
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Ограниченный кольцевой буфер без блокировок для передачи задач между стадиями.
+ * Все ячейки выделяются заранее, на операцию не создается ни одного объекта.
+ * Каждая ячейка хранит номер последовательности: производитель занимает ячейку,
+ * когда ее номер равен позиции записи, потребитель - когда номер на единицу больше позиции чтения.
+ * Позиции сдвигаются через CAS, поэтому буфер допускает несколько производителей и несколько потребителей.
+ * @param <T> тип передаваемой задачи
+ */
+public class RingBufferQueue<T> implements StageQueue<T> {
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = this::isNotEmpty;
+    private final BooleanSupplier notFull = this::isNotFull;
+
+    /**
+     * @param capacity желаемая емкость, округляется вверх до степени двойки
+     * @param waitStrategy как ждать в take() и put()
+     */
+    public RingBufferQueue(int capacity, WaitStrategy waitStrategy) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.buffer = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public boolean offer(T element) {
+        long position = writePosition.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (writePosition.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = writePosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = writePosition.get();
+            }
+        }
+        buffer[index] = element;
+        sequences.set(index, position + 1);
+        waitStrategy.signal();
+        return true;
+    }
+
+    @Override
+    public void put(T element) throws InterruptedException {
+        while (!offer(element)) {
+            waitStrategy.await(notFull);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long position = readPosition.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (readPosition.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = readPosition.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = readPosition.get();
+            }
+        }
+        T element = (T) buffer[index];
+        buffer[index] = null;
+        sequences.set(index, position + mask + 1);
+        waitStrategy.signal();
+        return element;
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        T element;
+        while ((element = poll()) == null) {
+            waitStrategy.await(notEmpty);
+        }
+        return element;
+    }
+
+    @Override
+    public int size() {
+        long size = writePosition.get() - readPosition.get();
+        return (int) Math.max(0, Math.min(size, buffer.length));
+    }
+
+    @Override
+    public int capacity() {
+        return buffer.length;
+    }
+
+    private boolean isNotEmpty() {
+        long position = readPosition.get();
+        return sequences.get((int) (position & mask)) == position + 1;
+    }
+
+    private boolean isNotFull() {
+        long position = writePosition.get();
+        return sequences.get((int) (position & mask)) == position;
+    }
+}
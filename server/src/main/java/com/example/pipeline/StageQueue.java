@@ -0,0 +1,64 @@
+package com.example.pipeline;
+
+/**
+ * Очередь между стадиями конвейера сервера (чтение -> обработка -> отправка).
+ * @param <T> тип передаваемой задачи
+ */
+public interface StageQueue<T> {
+    /**
+     * Кладет элемент, если есть место.
+     * @param element элемент
+     * @return false, если очередь заполнена
+     */
+    boolean offer(T element);
+
+    /**
+     * Кладет элемент, дожидаясь свободного места.
+     * @param element элемент
+     */
+    void put(T element) throws InterruptedException;
+
+    /**
+     * Забирает элемент, если он есть.
+     * @return элемент или null, если очередь пуста
+     */
+    T poll();
+
+    /**
+     * Забирает элемент, дожидаясь его появления.
+     * @return элемент
+     */
+    T take() throws InterruptedException;
+
+    /**
+     * Освобождает место под новый элемент, забирая самый старый из тех, что мешают его поставить.
+     * @param element элемент, для которого нужно место
+     * @return вытесненный элемент или null
+     */
+    default T evictFor(T element) {
+        return poll();
+    }
+
+    int size();
+
+    /**
+     * @return максимальное число элементов или Integer.MAX_VALUE для неограниченной очереди
+     */
+    int capacity();
+
+    /**
+     * @param element элемент, для которого нужно место
+     * @return число элементов в той части очереди, куда попадет element
+     */
+    default int sizeFor(T element) {
+        return size();
+    }
+
+    /**
+     * @param element элемент, для которого нужно место
+     * @return емкость той части очереди, куда попадет element
+     */
+    default int capacityFor(T element) {
+        return capacity();
+    }
+}
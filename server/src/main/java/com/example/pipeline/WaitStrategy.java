@@ -0,0 +1,19 @@
+package com.example.pipeline;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Способ ожидания потока, которому нечего взять из кольцевого буфера или некуда положить.
+ */
+public interface WaitStrategy {
+    /**
+     * Ждет, пока ready не вернет true.
+     * @param ready условие продолжения, проверяется повторно после каждого пробуждения
+     */
+    void await(BooleanSupplier ready) throws InterruptedException;
+
+    /**
+     * Будит ждущие потоки после изменения буфера.
+     */
+    void signal();
+}
@@ -0,0 +1,28 @@
+package com.example.pipeline;
+
+/**
+ * Доступные стратегии ожидания для RingBufferQueue.
+ */
+public enum WaitStrategyType {
+    /**
+     * Крутится в цикле. Минимальная задержка, но занимает ядро целиком.
+     * Подходит только если у каждого ждущего потока есть свое свободное ядро.
+     */
+    BUSY_SPIN,
+    /**
+     * Крутится недолго, затем уступает процессор через Thread.yield().
+     */
+    YIELD,
+    /**
+     * Крутится недолго, затем засыпает до сигнала от другой стороны буфера.
+     */
+    PARK;
+
+    public WaitStrategy create() {
+        return switch (this) {
+            case BUSY_SPIN -> new BusySpinWaitStrategy();
+            case YIELD -> new YieldingWaitStrategy();
+            case PARK -> new ParkingWaitStrategy();
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.pipeline;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Ожидание, которое после короткого кручения уступает процессор другим потокам.
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public void await(BooleanSupplier ready) throws InterruptedException {
+        int counter = 0;
+        while (!ready.getAsBoolean()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (counter < SPIN_TRIES) {
+                counter++;
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Override
+    public void signal() {
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.DB;
+
+import com.example.common.model.Movie;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Выборки по вторичным индексам MovieStore сверяются с фильтрацией всех фильмов, отсортированных в порядке индекса.
+ */
+class MovieStoreIndexTest {
+    private static final String[] OWNERS = {"anna", "bob", "bobby", "carl"};
+
+    @Test
+    void ownedByMatchesFilteredReference() {
+        Random random = new Random(17);
+        MovieStore store = MovieStore.EMPTY;
+        TreeSet<Movie> reference = new TreeSet<>(MovieStore.ORDER);
+        for (int step = 0; step < 5_000; step++) {
+            int id = random.nextInt(600);
+            Movie previous = store.get(id);
+            if (previous != null) {
+                reference.remove(previous);
+            }
+            if (random.nextInt(4) == 0) {
+                store = store.remove(id);
+            } else {
+                Movie movie = movie(id, "фильм", OWNERS[random.nextInt(OWNERS.length)], random.nextInt(4), random.nextInt(4));
+                store = store.put(movie);
+                reference.add(movie);
+            }
+        }
+
+        for (String owner : OWNERS) {
+            List<Integer> expected = reference.stream().filter(movie -> owner.equals(movie.getOwnerLogin())).map(Movie::getId).toList();
+            assertEquals(expected, MovieStoreTest.ids(store.ownedBy(owner, null)), owner);
+            for (int oscars = 0; oscars < 4; oscars++) {
+                Movie probe = movie(0, null, null, oscars, 1);
+                List<Integer> greater = reference.stream()
+                        .filter(movie -> owner.equals(movie.getOwnerLogin()) && movie.compareTo(probe) > 0)
+                        .map(Movie::getId).toList();
+                assertEquals(greater, MovieStoreTest.ids(store.ownedByGreaterThan(owner, probe)), owner + "/" + oscars);
+            }
+        }
+        assertEquals(List.of(), MovieStoreTest.ids(store.ownedBy("bo", null)));
+    }
+
+    @Test
+    void ownedByResumesAfterCursor() {
+        MovieStore store = MovieStore.EMPTY;
+        for (int id = 1; id <= 60; id++) {
+            store = store.put(movie(id, "фильм", OWNERS[id % 2], id % 3, 0));
+        }
+        List<Integer> all = MovieStoreTest.ids(store.ownedBy("anna", null));
+        List<Integer> resumed = new ArrayList<>();
+        Movie cursor = null;
+        do {
+            Movie last = null;
+            int taken = 0;
+            for (Movie movie : store.ownedBy("anna", cursor)) {
+                if (taken++ == 4) {
+                    break;
+                }
+                resumed.add(movie.getId());
+                last = movie;
+            }
+            cursor = last;
+        } while (cursor != null);
+        assertEquals(all, resumed);
+    }
+
+    @Test
+    void removeOwnedByKeepsOtherOwners() {
+        MovieStore store = MovieStore.EMPTY;
+        for (int id = 1; id <= 100; id++) {
+            store = store.put(movie(id, "фильм", OWNERS[id % OWNERS.length], id % 5, 0));
+        }
+        MovieStore before = store;
+        MovieStore after = store.removeOwnedBy("bob");
+
+        assertEquals(75, after.size());
+        assertEquals(List.of(), MovieStoreTest.ids(after.ownedBy("bob", null)));
+        assertEquals(MovieStoreTest.ids(before.ownedBy("bobby", null)), MovieStoreTest.ids(after.ownedBy("bobby", null)));
+        assertEquals(100, before.size());
+        assertSame(after, after.removeOwnedBy("bob"));
+    }
+
+    @Test
+    void nameStartsWithMatchesFilteredReference() {
+        String[] names = {"Аватар", "Ава", "Аваланш", "Б", "Бэтмен", "", "аватар", "Авб"};
+        MovieStore store = MovieStore.EMPTY;
+        for (int id = 1; id <= 80; id++) {
+            store = store.put(movie(id, names[id % names.length], "anna", id % 3, 0));
+        }
+        store = store.remove(9).remove(17);
+        MovieStore finalStore = store;
+
+        for (String prefix : new String[]{"", "А", "Ава", "Аватар", "Аватары", "Б", "В", "а"}) {
+            List<Integer> expected = finalStore.stream()
+                    .filter(movie -> movie.getName().startsWith(prefix))
+                    .sorted(MovieStore.NAME_ORDER)
+                    .map(Movie::getId).toList();
+            assertEquals(expected, MovieStoreTest.ids(finalStore.nameStartsWith(prefix)), prefix);
+        }
+    }
+
+    static Movie movie(int id, String name, String owner, long oscarsCount, long usaBoxOffice) {
+        return new Movie(id, name, null, new Date(0), oscarsCount, usaBoxOffice, null, null, null, owner);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.DB;
+
+import com.example.common.model.Movie;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Случайные операции над MovieStore сверяются с TreeSet в порядке ORDER и HashMap по id.
+ */
+class MovieStoreTest {
+
+    @Test
+    void matchesTreeSetReferenceUnderRandomOperations() {
+        Random random = new Random(3);
+        MovieStore store = MovieStore.EMPTY;
+        TreeSet<Movie> reference = new TreeSet<>(MovieStore.ORDER);
+        Map<Integer, Movie> byId = new HashMap<>();
+
+        for (int step = 0; step < 50_000; step++) {
+            int id = random.nextInt(2_000) - 5;
+            switch (random.nextInt(4)) {
+                case 0, 1 -> {
+                    // Мало различных ключей сортировки, поэтому много фильмов с одинаковым ключом
+                    Movie movie = movie(id, random.nextInt(5), random.nextInt(5));
+                    Movie previous = byId.put(id, movie);
+                    if (previous != null) {
+                        reference.remove(previous);
+                    }
+                    reference.add(movie);
+                    store = store.put(movie);
+                }
+                case 2 -> {
+                    Movie previous = byId.remove(id);
+                    if (previous != null) {
+                        reference.remove(previous);
+                    }
+                    store = store.remove(id);
+                }
+                default -> assertSame(byId.get(id), store.get(id));
+            }
+            if (step % 997 == 0) {
+                assertSameContents(reference, store);
+            }
+        }
+        assertSameContents(reference, store);
+    }
+
+    @Test
+    void greaterThanSkipsEveryMovieWithEqualKey() {
+        MovieStore store = MovieStore.EMPTY;
+        TreeSet<Movie> reference = new TreeSet<>(MovieStore.ORDER);
+        for (int id = 1; id <= 300; id++) {
+            Movie movie = movie(id, id % 4, id % 3);
+            store = store.put(movie);
+            reference.add(movie);
+        }
+        for (int oscars = -1; oscars <= 4; oscars++) {
+            for (int box = -1; box <= 3; box++) {
+                Movie probe = movie(0, oscars, box);
+                List<Integer> expected = reference.stream().filter(movie -> movie.compareTo(probe) > 0).map(Movie::getId).toList();
+                assertEquals(expected, ids(store.greaterThan(probe)), oscars + "/" + box);
+            }
+        }
+    }
+
+    @Test
+    void afterResumesFromCursor() {
+        MovieStore store = MovieStore.EMPTY;
+        for (int id = 1; id <= 100; id++) {
+            store = store.put(movie(id, id % 5, 0));
+        }
+        List<Integer> all = ids(store.ordered());
+        List<Integer> pages = new ArrayList<>();
+        Movie cursor = null;
+        while (true) {
+            List<Integer> page = new ArrayList<>();
+            for (Movie movie : cursor == null ? store.ordered() : store.after(cursor)) {
+                if (page.size() == 7) {
+                    break;
+                }
+                page.add(movie.getId());
+                cursor = movie;
+            }
+            if (page.isEmpty()) {
+                break;
+            }
+            pages.addAll(page);
+        }
+        assertEquals(all, pages);
+    }
+
+    @Test
+    void oldVersionsStayUnchanged() {
+        MovieStore store = MovieStore.EMPTY;
+        List<MovieStore> versions = new ArrayList<>();
+        List<List<Integer>> contents = new ArrayList<>();
+        Random random = new Random(11);
+        for (int step = 0; step < 2_000; step++) {
+            int id = random.nextInt(200);
+            store = random.nextBoolean() ? store.put(movie(id, random.nextInt(3), random.nextInt(3))) : store.remove(id);
+            if (step % 100 == 0) {
+                versions.add(store);
+                contents.add(ids(store.ordered()));
+            }
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(contents.get(i), ids(versions.get(i).ordered()));
+            assertEquals(contents.get(i).size(), versions.get(i).size());
+        }
+    }
+
+    @Test
+    void removingMissingIdReturnsSameVersion() {
+        MovieStore store = MovieStore.EMPTY.put(movie(1, 0, 0));
+        assertSame(store, store.remove(2));
+        assertSame(MovieStore.EMPTY, MovieStore.EMPTY.remove(1));
+        assertNull(MovieStore.EMPTY.last());
+    }
+
+    static Movie movie(int id, long oscarsCount, long usaBoxOffice) {
+        return new Movie(id, "фильм " + id, null, oscarsCount, usaBoxOffice, null, null, null);
+    }
+
+    static List<Integer> ids(Iterable<Movie> movies) {
+        List<Integer> ids = new ArrayList<>();
+        movies.forEach(movie -> ids.add(movie.getId()));
+        return ids;
+    }
+
+    private static void assertSameContents(TreeSet<Movie> reference, MovieStore store) {
+        assertEquals(reference.size(), store.size());
+        assertEquals(reference.stream().map(Movie::getId).toList(), ids(store.ordered()));
+        assertEquals(reference.stream().map(Movie::getId).toList(), store.stream().map(Movie::getId).toList());
+        assertSame(reference.isEmpty() ? null : reference.last(), store.last());
+    }
+}
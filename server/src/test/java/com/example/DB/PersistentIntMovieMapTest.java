@@ -0,0 +1,114 @@
+package com.example.DB;
+
+import com.example.common.model.Movie;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentIntMovieMapTest {
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        Random random = new Random(5);
+        PersistentIntMovieMap map = PersistentIntMovieMap.EMPTY;
+        Map<Integer, Movie> reference = new HashMap<>();
+        int[] keys = keys(random, 3_000);
+
+        for (int step = 0; step < 100_000; step++) {
+            int id = keys[random.nextInt(keys.length)];
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    Movie movie = MovieStoreTest.movie(id, step, 0);
+                    reference.put(id, movie);
+                    map = map.put(id, movie);
+                }
+                case 1 -> {
+                    reference.remove(id);
+                    map = map.remove(id);
+                }
+                default -> assertSame(reference.get(id), map.get(id));
+            }
+            assertEquals(reference.size(), map.size());
+        }
+        for (int id : keys) {
+            assertSame(reference.get(id), map.get(id));
+        }
+    }
+
+    @Test
+    void oldVersionsStayUnchanged() {
+        Random random = new Random(13);
+        int[] keys = keys(random, 500);
+        PersistentIntMovieMap map = PersistentIntMovieMap.EMPTY;
+        Map<Integer, Movie> reference = new HashMap<>();
+        List<PersistentIntMovieMap> versions = new ArrayList<>();
+        List<Map<Integer, Movie>> snapshots = new ArrayList<>();
+        for (int step = 0; step < 5_000; step++) {
+            int id = keys[random.nextInt(keys.length)];
+            if (random.nextBoolean()) {
+                Movie movie = MovieStoreTest.movie(id, step, 0);
+                reference.put(id, movie);
+                map = map.put(id, movie);
+            } else {
+                reference.remove(id);
+                map = map.remove(id);
+            }
+            if (step % 250 == 0) {
+                versions.add(map);
+                snapshots.add(new HashMap<>(reference));
+            }
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(snapshots.get(i).size(), versions.get(i).size());
+            for (int id : keys) {
+                assertSame(snapshots.get(i).get(id), versions.get(i).get(id));
+            }
+        }
+    }
+
+    @Test
+    void keysDifferingOnlyInHighBitsDoNotCollide() {
+        int[] keys = {0, 1 << 30, Integer.MIN_VALUE, -1, Integer.MAX_VALUE, 1 << 25, (1 << 25) | 1};
+        PersistentIntMovieMap map = PersistentIntMovieMap.EMPTY;
+        for (int id : keys) {
+            map = map.put(id, MovieStoreTest.movie(id, 0, 0));
+        }
+        assertEquals(keys.length, map.size());
+        for (int id : keys) {
+            assertEquals(id, map.get(id).getId());
+        }
+        for (int id : keys) {
+            map = map.remove(id);
+            assertNull(map.get(id));
+        }
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void removingMissingIdReturnsSameVersion() {
+        PersistentIntMovieMap map = PersistentIntMovieMap.EMPTY.put(1, MovieStoreTest.movie(1, 0, 0));
+        assertSame(map, map.remove(2));
+        assertSame(PersistentIntMovieMap.EMPTY, PersistentIntMovieMap.EMPTY.remove(1));
+    }
+
+    /**
+     * @return ключи вперемешку: маленькие, отрицательные и произвольные
+     */
+    private static int[] keys(Random random, int count) {
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = switch (i % 3) {
+                case 0 -> i;
+                case 1 -> -i;
+                default -> random.nextInt();
+            };
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.pipeline;
+
+import com.example.common.command.CommandClass;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+    private final List<Task> shed = new ArrayList<>();
+
+    @Test
+    void rejectRefusesNewTaskWhenQueueIsFull() {
+        StageQueue<Task> queue = new RingBufferQueue<>(2, WaitStrategyType.PARK.create());
+        AdmissionController<Task> admission = controller(queue, OverloadPolicy.REJECT, Set.of(), 1);
+        Task first = new Task(CommandClass.READ);
+        Task second = new Task(CommandClass.READ);
+        Task third = new Task(CommandClass.WRITE);
+
+        assertTrue(admission.admit(first));
+        assertTrue(admission.admit(second));
+        assertFalse(admission.admit(third));
+
+        assertEquals(List.of(third), shed);
+        assertSame(first, queue.poll());
+        assertEquals(2, admission.getAdmitted());
+        assertEquals(1, admission.getRejected());
+        assertEquals(2, admission.getInFlight());
+    }
+
+    @Test
+    void dropOldestShedsHeadAndAdmitsNewTask() {
+        StageQueue<Task> queue = new RingBufferQueue<>(2, WaitStrategyType.PARK.create());
+        AdmissionController<Task> admission = controller(queue, OverloadPolicy.DROP_OLDEST, Set.of(), 1);
+        Task first = new Task(CommandClass.READ);
+        Task second = new Task(CommandClass.READ);
+        Task third = new Task(CommandClass.READ);
+        admission.admit(first);
+        admission.admit(second);
+
+        assertTrue(admission.admit(third));
+        assertEquals(List.of(first), shed);
+        assertSame(second, queue.poll());
+        assertSame(third, queue.poll());
+        assertEquals(1, admission.getDroppedOldest());
+        // Вытесненная задача больше не считается в работе
+        assertEquals(2, admission.getInFlight());
+    }
+
+    @Test
+    void dropOldestWithLanesEvictsOnlyFromTheSameLane() {
+        PriorityLanes<Task> lanes = new PriorityLanes<>(Task::commandClass, Map.of(), QueueType.RING, 2, WaitStrategyType.PARK);
+        AdmissionController<Task> admission = controller(lanes, OverloadPolicy.DROP_OLDEST, Set.of(), 1);
+        Task write = new Task(CommandClass.WRITE);
+        Task oldRead = new Task(CommandClass.READ);
+        admission.admit(write);
+        admission.admit(oldRead);
+        admission.admit(new Task(CommandClass.READ));
+
+        assertTrue(admission.admit(new Task(CommandClass.READ)));
+        assertEquals(List.of(oldRead), shed);
+        assertEquals(1, lanes.size(CommandClass.WRITE));
+        assertEquals(2, lanes.size(CommandClass.READ));
+    }
+
+    @Test
+    void dropByClassShedsSheddableClassFromThreshold() {
+        StageQueue<Task> queue = new RingBufferQueue<>(8, WaitStrategyType.PARK.create());
+        AdmissionController<Task> admission = controller(queue, OverloadPolicy.DROP_BY_CLASS,
+                Set.of(CommandClass.READ), 0.5);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(admission.admit(new Task(CommandClass.READ)));
+        }
+
+        Task read = new Task(CommandClass.READ);
+        assertFalse(admission.admit(read));
+        assertEquals(List.of(read), shed);
+        assertEquals(1, admission.getShedByClass());
+        // Остальные классы занимают оставшееся место до конца
+        for (int i = 0; i < 4; i++) {
+            assertTrue(admission.admit(new Task(CommandClass.WRITE)));
+        }
+        assertFalse(admission.admit(new Task(CommandClass.WRITE)));
+        assertEquals(1, admission.getRejected());
+    }
+
+    @Test
+    void dropByClassMeasuresThresholdAgainstTargetLane() {
+        PriorityLanes<Task> lanes = new PriorityLanes<>(Task::commandClass, Map.of(), QueueType.RING, 4, WaitStrategyType.PARK);
+        AdmissionController<Task> admission = controller(lanes, OverloadPolicy.DROP_BY_CLASS,
+                Set.of(CommandClass.READ), 0.5);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(admission.admit(new Task(CommandClass.WRITE)));
+        }
+
+        // Полная полоса записей не мешает чтениям, пока заполнена их собственная полоса
+        assertTrue(admission.admit(new Task(CommandClass.READ)));
+        assertTrue(admission.admit(new Task(CommandClass.READ)));
+        assertFalse(admission.admit(new Task(CommandClass.READ)));
+        assertEquals(1, admission.getShedByClass());
+        assertEquals(0, admission.getRejected());
+    }
+
+    @Test
+    void shedThresholdNeverFallsBelowOneTask() {
+        StageQueue<Task> queue = new RingBufferQueue<>(4, WaitStrategyType.PARK.create());
+        AdmissionController<Task> admission = controller(queue, OverloadPolicy.DROP_BY_CLASS,
+                Set.of(CommandClass.READ), 0);
+
+        assertTrue(admission.admit(new Task(CommandClass.READ)));
+        assertFalse(admission.admit(new Task(CommandClass.READ)));
+    }
+
+    @Test
+    void awaitIdleWaitsForTaskAlreadyTakenFromQueue() throws Exception {
+        StageQueue<Task> queue = new RingBufferQueue<>(4, WaitStrategyType.PARK.create());
+        AdmissionController<Task> admission = controller(queue, OverloadPolicy.REJECT, Set.of(), 1);
+        CountDownLatch taken = new CountDownLatch(1);
+        AtomicBoolean finished = new AtomicBoolean();
+        // Медленная команда: обработчик уже забрал запрос, очередь пуста, а ответ еще не готов
+        Thread worker = new Thread(() -> {
+            try {
+                queue.take();
+                taken.countDown();
+                Thread.sleep(300);
+                finished.set(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                admission.complete();
+            }
+        });
+        worker.start();
+
+        assertTrue(admission.admit(new Task(CommandClass.WRITE)));
+        assertTrue(taken.await(5, TimeUnit.SECONDS));
+        assertEquals(0, queue.size());
+        assertEquals(1, admission.getInFlight());
+
+        assertTrue(admission.awaitIdle(System.nanoTime() + TimeUnit.SECONDS.toNanos(5)));
+        assertTrue(finished.get());
+        assertEquals(0, admission.getInFlight());
+        worker.join();
+    }
+
+    @Test
+    void awaitIdleGivesUpAtDeadline() {
+        StageQueue<Task> queue = new RingBufferQueue<>(4, WaitStrategyType.PARK.create());
+        AdmissionController<Task> admission = controller(queue, OverloadPolicy.REJECT, Set.of(), 1);
+        admission.admit(new Task(CommandClass.READ));
+
+        assertFalse(admission.awaitIdle(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(30)));
+        assertEquals(1, admission.getInFlight());
+    }
+
+    private AdmissionController<Task> controller(StageQueue<Task> queue, OverloadPolicy policy,
+                                                 Set<CommandClass> sheddable, double threshold) {
+        return new AdmissionController<>(queue, policy, Task::commandClass, sheddable, threshold, shed::add);
+    }
+
+    /**
+     * Задача сравнивается по ссылке, чтобы проверки различали задачи одного класса.
+     */
+    private static final class Task {
+        private final CommandClass commandClass;
+
+        private Task(CommandClass commandClass) {
+            this.commandClass = commandClass;
+        }
+
+        private CommandClass commandClass() {
+            return commandClass;
+        }
+    }
+}
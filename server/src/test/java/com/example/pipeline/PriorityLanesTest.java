@@ -0,0 +1,104 @@
+package com.example.pipeline;
+
+import com.example.common.command.CommandClass;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.common.command.CommandClass.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriorityLanesTest {
+    private static final Map<CommandClass, Integer> WEIGHTS = Map.of(READ, 8, WRITE, 4, AUTH, 2, ADMIN, 1);
+
+    @Test
+    void pollsLanesInSmoothWeightedOrder() {
+        PriorityLanes<Task> lanes = lanes(WEIGHTS, 32);
+        for (CommandClass commandClass : CommandClass.values()) {
+            for (int i = 0; i < 16; i++) {
+                assertTrue(lanes.offer(new Task(commandClass, i)));
+            }
+        }
+
+        List<CommandClass> order = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            order.add(lanes.poll().commandClass());
+        }
+        // Полоса с большим весом чередуется с остальными, а не идет блоком из восьми подряд
+        assertEquals(List.of(READ, WRITE, READ, AUTH, READ, WRITE, READ, ADMIN,
+                READ, WRITE, READ, AUTH, READ, WRITE, READ), order);
+    }
+
+    @Test
+    void skipsEmptyLanesAndKeepsFifoWithinLane() {
+        PriorityLanes<Task> lanes = lanes(WEIGHTS, 8);
+        for (int i = 0; i < 3; i++) {
+            lanes.offer(new Task(ADMIN, i));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(new Task(ADMIN, i), lanes.poll());
+        }
+        assertNull(lanes.poll());
+    }
+
+    @Test
+    void boundsEachLaneSeparately() {
+        PriorityLanes<Task> lanes = lanes(WEIGHTS, 2);
+        assertTrue(lanes.offer(new Task(WRITE, 0)));
+        assertTrue(lanes.offer(new Task(WRITE, 1)));
+        assertFalse(lanes.offer(new Task(WRITE, 2)));
+        assertTrue(lanes.offer(new Task(READ, 0)));
+
+        assertEquals(2, lanes.sizeFor(new Task(WRITE, 3)));
+        assertEquals(1, lanes.sizeFor(new Task(READ, 3)));
+        assertEquals(2, lanes.capacityFor(new Task(READ, 3)));
+        assertEquals(2, lanes.size(WRITE));
+        assertEquals(3, lanes.size());
+        assertEquals(2 * CommandClass.values().length, lanes.capacity());
+    }
+
+    @Test
+    void evictForTakesOldestOfTheSameLane() {
+        PriorityLanes<Task> lanes = lanes(WEIGHTS, 2);
+        lanes.offer(new Task(READ, 0));
+        lanes.offer(new Task(WRITE, 0));
+        lanes.offer(new Task(WRITE, 1));
+
+        assertEquals(new Task(WRITE, 0), lanes.evictFor(new Task(WRITE, 2)));
+        assertEquals(1, lanes.size(READ));
+        assertNull(lanes.evictFor(new Task(AUTH, 0)));
+    }
+
+    @Test
+    void putWaitsForRoomInItsLane() throws InterruptedException {
+        PriorityLanes<Task> lanes = lanes(WEIGHTS, 2);
+        lanes.offer(new Task(WRITE, 0));
+        lanes.offer(new Task(WRITE, 1));
+        Thread producer = new Thread(() -> {
+            try {
+                lanes.put(new Task(WRITE, 2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        producer.join(100);
+        assertTrue(producer.isAlive());
+        assertEquals(new Task(WRITE, 0), lanes.poll());
+        producer.join(5_000);
+        assertFalse(producer.isAlive());
+        assertEquals(new Task(WRITE, 1), lanes.poll());
+        assertEquals(new Task(WRITE, 2), lanes.poll());
+    }
+
+    private static PriorityLanes<Task> lanes(Map<CommandClass, Integer> weights, int laneCapacity) {
+        return new PriorityLanes<>(Task::commandClass, weights, QueueType.RING, laneCapacity, WaitStrategyType.PARK);
+    }
+
+    private record Task(CommandClass commandClass, int number) {
+    }
+}
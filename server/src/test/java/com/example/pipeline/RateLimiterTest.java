@@ -0,0 +1,54 @@
+package com.example.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    @Test
+    void allowsBurstThenLimitsUntilRefill() throws InterruptedException {
+        RateLimiter<String> limiter = new RateLimiter<>(20, 3, 100, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("user"));
+        }
+        assertFalse(limiter.tryAcquire("user"));
+        assertTrue(limiter.tryAcquire("other"));
+
+        // 20 токенов в секунду: за 100 мс ведро пополняется хотя бы на один
+        Thread.sleep(100);
+        assertTrue(limiter.tryAcquire("user"));
+        assertEquals(1, limiter.getLimited());
+    }
+
+    @Test
+    void expiresIdleBuckets() throws InterruptedException {
+        RateLimiter<String> limiter = new RateLimiter<>(0.001, 1, 100, 50, TimeUnit.MILLISECONDS);
+        assertTrue(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("b"));
+        assertFalse(limiter.tryAcquire("a"));
+        assertEquals(2, limiter.getTrackedKeys());
+
+        Thread.sleep(80);
+        // Оба ведра простаивали дольше таймаута и удаляются; новое ведро снова полное
+        assertTrue(limiter.tryAcquire("a"));
+        assertEquals(2, limiter.getExpired());
+        assertEquals(1, limiter.getTrackedKeys());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedKeyWhenFull() {
+        RateLimiter<String> limiter = new RateLimiter<>(0.001, 1, 2, 1, TimeUnit.MINUTES);
+        limiter.tryAcquire("a");
+        limiter.tryAcquire("b");
+        assertFalse(limiter.tryAcquire("a"));
+        limiter.tryAcquire("c");
+
+        assertEquals(2, limiter.getTrackedKeys());
+        // Ведро b вытеснено как самое давнее, a осталось пустым
+        assertTrue(limiter.tryAcquire("b"));
+        assertEquals(2, limiter.getTrackedKeys());
+    }
+}
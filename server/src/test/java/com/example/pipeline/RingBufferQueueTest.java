@@ -0,0 +1,107 @@
+package com.example.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferQueueTest {
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(8, new RingBufferQueue<Integer>(5, WaitStrategyType.PARK.create()).capacity());
+        assertEquals(8, new RingBufferQueue<Integer>(8, WaitStrategyType.PARK.create()).capacity());
+        assertEquals(2, new RingBufferQueue<Integer>(1, WaitStrategyType.PARK.create()).capacity());
+    }
+
+    @Test
+    void keepsFifoOrderAcrossWrapAround() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(4, WaitStrategyType.PARK.create());
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 10; round++) {
+            while (queue.offer(next)) {
+                next++;
+            }
+            assertEquals(4, queue.size());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(expected++, queue.poll());
+            }
+        }
+        Integer element;
+        while ((element = queue.poll()) != null) {
+            assertEquals(expected++, element);
+        }
+        assertEquals(next, expected);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void offerFailsWhenFullAndPollReturnsNullWhenEmpty() {
+        RingBufferQueue<String> queue = new RingBufferQueue<>(2, WaitStrategyType.PARK.create());
+        assertNull(queue.poll());
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b"));
+        assertFalse(queue.offer("c"));
+        assertEquals("a", queue.evictFor("c"));
+        assertTrue(queue.offer("c"));
+        assertEquals("b", queue.poll());
+        assertEquals("c", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void deliversEveryElementOnceWithManyProducersAndConsumers() throws InterruptedException {
+        for (WaitStrategyType waitStrategy : WaitStrategyType.values()) {
+            RingBufferQueue<Long> queue = new RingBufferQueue<>(64, waitStrategy.create());
+            int producers = 3;
+            int consumers = 3;
+            long perProducer = 5_000;
+            AtomicLong sum = new AtomicLong();
+            AtomicLong count = new AtomicLong();
+            Thread[] threads = new Thread[producers + consumers];
+            for (int i = 0; i < producers; i++) {
+                threads[i] = new Thread(() -> {
+                    try {
+                        for (long value = 1; value <= perProducer; value++) {
+                            queue.put(value);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            for (int i = 0; i < consumers; i++) {
+                threads[producers + i] = new Thread(() -> {
+                    try {
+                        long value;
+                        while ((value = queue.take()) > 0) {
+                            sum.addAndGet(value);
+                            count.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (int i = 0; i < producers; i++) {
+                threads[i].join(TimeUnit.SECONDS.toMillis(30));
+            }
+            for (int i = 0; i < consumers; i++) {
+                queue.put(-1L);
+            }
+            for (int i = 0; i < consumers; i++) {
+                threads[producers + i].join(TimeUnit.SECONDS.toMillis(30));
+            }
+
+            assertEquals(producers * perProducer, count.get(), waitStrategy.name());
+            assertEquals(producers * perProducer * (perProducer + 1) / 2, sum.get(), waitStrategy.name());
+            assertEquals(0, queue.size(), waitStrategy.name());
+        }
+    }
+}